@@ -0,0 +1,113 @@
+package com.dolphin.gridlayout.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dolphin.gridlayout.GridLayoutEngine;
+
+/**
+ * Measure and layout passes of {@link GridLayoutEngine} over synthetic grids.
+ * Run through {@link BenchmarkMain} to get B/op next to ns/op.
+ *
+ * @author dolphinWang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridLayoutEngineBenchmark {
+
+    private static final int CELL_SIZE = 48;
+    private static final int ITEM_SPACE = 2;
+
+    @Param({ "3", "8", "16", "32", "64" })
+    public int gridSize;
+
+    /**
+     * EXACTLY is the usual fixed-size tile, UNSPECIFIED (a grid inside a
+     * ScrollView) and AT_MOST (wrap_content) size the rows to their content.
+     */
+    @Param({ "EXACTLY", "UNSPECIFIED", "AT_MOST" })
+    public String heightMode;
+
+    private GridLayoutEngine mEngine;
+    private SyntheticGrid mGrid;
+
+    private int mWidthSpec;
+    private int mHeightSpec;
+
+    private int[] mSizes;
+    private int[] mRects;
+
+    @Setup
+    public void setUp() {
+        mGrid = new SyntheticGrid(gridSize, CELL_SIZE, 42L);
+
+        mEngine = new GridLayoutEngine();
+        mEngine.setRowCount(gridSize);
+        mEngine.setColumnCount(gridSize);
+        mEngine.setItemHorizontalSpace(ITEM_SPACE);
+        mEngine.setItemVerticalSpace(ITEM_SPACE);
+        mEngine.setPadding(ITEM_SPACE, ITEM_SPACE, ITEM_SPACE, ITEM_SPACE);
+
+        final int size = gridSize * (CELL_SIZE + ITEM_SPACE) + ITEM_SPACE;
+        mWidthSpec = GridLayoutEngine.makeMeasureSpec(size,
+                GridLayoutEngine.EXACTLY);
+        if ("UNSPECIFIED".equals(heightMode)) {
+            mHeightSpec = GridLayoutEngine.makeMeasureSpec(0,
+                    GridLayoutEngine.UNSPECIFIED);
+        } else if ("AT_MOST".equals(heightMode)) {
+            mHeightSpec = GridLayoutEngine.makeMeasureSpec(size,
+                    GridLayoutEngine.AT_MOST);
+        } else {
+            mHeightSpec = GridLayoutEngine.makeMeasureSpec(size,
+                    GridLayoutEngine.EXACTLY);
+        }
+
+        mSizes = mGrid.newSizes();
+        mRects = mGrid.newRects();
+
+        // Layout alone needs sizes from a previous measure
+        measure();
+    }
+
+    @Benchmark
+    public int measure() {
+        final SyntheticGrid grid = mGrid;
+        mEngine.measure(mWidthSpec, mHeightSpec, grid.count, grid.cells,
+                grid.params, grid.desired, mSizes);
+
+        return mEngine.getMeasuredHeight();
+    }
+
+    @Benchmark
+    public int layout() {
+        final SyntheticGrid grid = mGrid;
+        mEngine.layout(grid.count, grid.cells, grid.gravities, mSizes, mRects);
+
+        return mRects[mRects.length - 1];
+    }
+
+    @Benchmark
+    public int measureAndLayout() {
+        final SyntheticGrid grid = mGrid;
+        mEngine.measure(mWidthSpec, mHeightSpec, grid.count, grid.cells,
+                grid.params, grid.desired, mSizes);
+        mEngine.layout(grid.count, grid.cells, grid.gravities, mSizes, mRects);
+
+        return mRects[mRects.length - 1];
+    }
+}
@@ -0,0 +1,83 @@
+package com.dolphin.gridlayout.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dolphin.gridlayout.GridOccupancy;
+
+/**
+ * Auto-placing children with mixed spans on {@link GridOccupancy}, until the
+ * grid is full.
+ *
+ * @author dolphinWang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridOccupancyBenchmark {
+
+    @Param({ "8", "32", "128" })
+    public int gridSize;
+
+    @Param({ "ROW", "ROW_DENSE", "COLUMN" })
+    public String flow;
+
+    private final GridOccupancy mOccupancy = new GridOccupancy();
+    private final int[] mPlacement = new int[2];
+
+    private int mFlow;
+    private int[] mRowSpans;
+    private int[] mColumnSpans;
+
+    @Setup
+    public void setUp() {
+        if ("ROW".equals(flow)) {
+            mFlow = GridOccupancy.FLOW_ROW;
+        } else if ("ROW_DENSE".equals(flow)) {
+            mFlow = GridOccupancy.FLOW_ROW | GridOccupancy.FLOW_DENSE;
+        } else {
+            mFlow = GridOccupancy.FLOW_COLUMN;
+        }
+
+        // More children than cells, the last ones find no room
+        final int count = gridSize * gridSize;
+        final Random random = new Random(42L);
+        mRowSpans = new int[count];
+        mColumnSpans = new int[count];
+        for (int i = 0; i < count; i++) {
+            mRowSpans[i] = random.nextInt(4) == 0 ? 2 : 1;
+            mColumnSpans[i] = random.nextInt(3) == 0 ? 2 : 1;
+        }
+    }
+
+    @Benchmark
+    public int placeAll() {
+        final GridOccupancy occupancy = mOccupancy;
+        occupancy.reset(gridSize, gridSize);
+
+        int placed = 0;
+        for (int i = 0; i < mRowSpans.length; i++) {
+            if (occupancy.place(-1, -1, mRowSpans[i], mColumnSpans[i], mFlow,
+                    mPlacement)) {
+                placed++;
+            }
+        }
+
+        return placed;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dolphin.gridlayout.benchmark;
+
+import java.util.Random;
+
+import com.dolphin.gridlayout.GridLayoutEngine;
+
+/**
+ * A square grid fully tiled with a seeded mix of 1x1, 1x2, 2x1 and 2x2 cells,
+ * mixed gravities and MATCH_PARENT / WRAP_CONTENT / fixed size children.
+ *
+ * @author dolphinWang
+ */
+public class SyntheticGrid {
+
+    private static final int[] GRAVITIES = new int[] {
+            GridLayoutEngine.GRAVITY_LEFT | GridLayoutEngine.GRAVITY_TOP,
+            GridLayoutEngine.GRAVITY_CENTER,
+            GridLayoutEngine.GRAVITY_RIGHT | GridLayoutEngine.GRAVITY_BOTTOM,
+            GridLayoutEngine.GRAVITY_CENTER_HORIZONTAL,
+            GridLayoutEngine.GRAVITY_CENTER_VERTICAL
+                    | GridLayoutEngine.GRAVITY_RIGHT,
+            GridLayoutEngine.GRAVITY_LEFT | GridLayoutEngine.GRAVITY_BOTTOM
+    };
+
+    public final int size;
+    public final int count;
+
+    public final int[] cells;
+    public final int[] gravities;
+    public final int[] params;
+    public final int[] desired;
+
+    public SyntheticGrid(int size, int cellSize, long seed) {
+        this.size = size;
+
+        final Random random = new Random(seed);
+        final boolean[] occupied = new boolean[size * size];
+        final int[] cells = new int[size * size
+                * GridLayoutEngine.CELL_STRIDE];
+        int count = 0;
+
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                if (occupied[row * size + column]) {
+                    continue;
+                }
+
+                int rowSpec = row + 1 < size && random.nextInt(4) == 0 ? 2 : 1;
+                int columnSpec = column + 1 < size && random.nextInt(3) == 0 ? 2 : 1;
+                if (columnSpec == 2 && occupied[row * size + column + 1]) {
+                    columnSpec = 1;
+                }
+
+                for (int r = row; r < row + rowSpec; r++) {
+                    for (int c = column; c < column + columnSpec; c++) {
+                        occupied[r * size + c] = true;
+                    }
+                }
+
+                final int at = count * GridLayoutEngine.CELL_STRIDE;
+                cells[at + GridLayoutEngine.CELL_ROW_INDEX] = row
+                        * GridLayoutEngine.CELL_ONE;
+                cells[at + GridLayoutEngine.CELL_ROW_SPEC] = rowSpec
+                        * GridLayoutEngine.CELL_ONE;
+                cells[at + GridLayoutEngine.CELL_COLUMN_INDEX] = column
+                        * GridLayoutEngine.CELL_ONE;
+                cells[at + GridLayoutEngine.CELL_COLUMN_SPEC] = columnSpec
+                        * GridLayoutEngine.CELL_ONE;
+                count++;
+            }
+        }
+
+        this.count = count;
+        this.cells = cells;
+        this.gravities = new int[count];
+        this.params = new int[count * GridLayoutEngine.SIZE_STRIDE];
+        this.desired = new int[count * GridLayoutEngine.SIZE_STRIDE];
+
+        for (int i = 0; i < count; i++) {
+            gravities[i] = GRAVITIES[random.nextInt(GRAVITIES.length)];
+
+            final int s = i * GridLayoutEngine.SIZE_STRIDE;
+            for (int axis = 0; axis < GridLayoutEngine.SIZE_STRIDE; axis++) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        params[s + axis] = GridLayoutEngine.MATCH_PARENT;
+                        break;
+                    case 1:
+                        params[s + axis] = GridLayoutEngine.WRAP_CONTENT;
+                        break;
+                    default:
+                        params[s + axis] = cellSize / 2 + random.nextInt(cellSize);
+                        break;
+                }
+
+                // Some children want more than their cells, to hit the aspect fit
+                desired[s + axis] = cellSize / 4 + random.nextInt(cellSize * 2);
+            }
+        }
+    }
+
+    /**
+     * Packed size buffer matching this grid.
+     */
+    public int[] newSizes() {
+        return new int[count * GridLayoutEngine.SIZE_STRIDE];
+    }
+
+    /**
+     * Packed rect buffer matching this grid.
+     */
+    public int[] newRects() {
+        return new int[count * GridLayoutEngine.RECT_STRIDE];
+    }
+}
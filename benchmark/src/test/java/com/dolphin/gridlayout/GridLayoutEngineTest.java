@@ -0,0 +1,350 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static com.dolphin.gridlayout.GridTestUtils.exactly;
+import static com.dolphin.gridlayout.GridTestUtils.filled;
+import static com.dolphin.gridlayout.GridTestUtils.newEngine;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Track maths of {@link GridLayoutEngine}: fixed, weighted and intrinsic
+ * sizing, fractional cells, and scaling of children to their cells.
+ *
+ * @author dolphinWang
+ */
+public class GridLayoutEngineTest {
+
+    private static int[] fit(int width, int height, int widthProvide,
+            int heightProvide) {
+        final int[] size = { width, height };
+        GridLayoutEngine.fitToCell(size, 0, widthProvide, heightProvide);
+        return size;
+    }
+
+    private static int[] columnSizes(GridLayoutEngine engine) {
+        final int[] sizes = new int[engine.getColumnCount()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = engine.getColumnWidth(i);
+        }
+        return sizes;
+    }
+
+    /**
+     * @param columns column index and span of each child, in whole tracks
+     * @param widths measured width of each child
+     */
+    private static int solveWidth(GridLayoutEngine engine, int[] columns,
+            int[] widths, int widthMode, int widthSize) {
+        final int count = widths.length;
+        final int[] cells = new int[count * GridLayoutEngine.CELL_STRIDE];
+        final int[] sizes = new int[count * GridLayoutEngine.SIZE_STRIDE];
+        for (int i = 0; i < count; i++) {
+            final int c = i * GridLayoutEngine.CELL_STRIDE;
+            cells[c + GridLayoutEngine.CELL_ROW_SPEC] = GridLayoutEngine.CELL_ONE;
+            cells[c + GridLayoutEngine.CELL_COLUMN_INDEX] = columns[i * 2]
+                    * GridLayoutEngine.CELL_ONE;
+            cells[c + GridLayoutEngine.CELL_COLUMN_SPEC] = columns[i * 2 + 1]
+                    * GridLayoutEngine.CELL_ONE;
+            sizes[i * GridLayoutEngine.SIZE_STRIDE] = widths[i];
+        }
+        return engine.solveIntrinsicWidth(count, cells, sizes, widthMode,
+                widthSize);
+    }
+
+    @Test
+    public void uniformColumnsGiveTheRemainderToTheFirst() {
+        final GridLayoutEngine engine = newEngine(1, 3, 0);
+        engine.resolveColumns(100);
+
+        assertArrayEquals(new int[] { 34, 33, 33 }, columnSizes(engine));
+    }
+
+    @Test
+    public void fixedColumnsComeOffBeforeTheWeights() {
+        final GridLayoutEngine engine = newEngine(1, 4, 10);
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_FIXED, 48);
+        engine.setColumnTrack(1, GridLayoutEngine.TRACK_WEIGHT, 2);
+        engine.setColumnTrack(3, GridLayoutEngine.TRACK_WRAP, 0);
+        engine.resolveColumns(400);
+
+        // 400 - 3 spaces - 48 leaves 322 for 3 weights, the lost pixel goes
+        // to the first weighted column; wrap gets nothing without children
+        assertArrayEquals(new int[] { 48, 215, 107, 0 }, columnSizes(engine));
+        assertEquals(400, engine.getContentWidth());
+    }
+
+    @Test
+    public void paddingAndSpacesAreLeftOut() {
+        final GridLayoutEngine engine = newEngine(2, 2, 10);
+        engine.setPadding(5, 20, 5, 20);
+        engine.setRowTrack(0, GridLayoutEngine.TRACK_FIXED, 30);
+        engine.resolveTracks(120, 200);
+
+        assertArrayEquals(new int[] { 50, 50 }, columnSizes(engine));
+        assertEquals(30, engine.getRowHeight(0));
+        assertEquals(120, engine.getRowHeight(1));
+        assertEquals(200, engine.getContentHeight());
+    }
+
+    @Test
+    public void zeroWeightsGetNothing() {
+        final GridLayoutEngine engine = newEngine(1, 3, 0);
+        engine.setColumnTrack(1, GridLayoutEngine.TRACK_WEIGHT, 0);
+        engine.resolveColumns(101);
+
+        assertArrayEquals(new int[] { 51, 0, 50 }, columnSizes(engine));
+
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_WEIGHT, 0);
+        engine.setColumnTrack(2, GridLayoutEngine.TRACK_FIXED, 40);
+        engine.resolveColumns(101);
+        assertArrayEquals(new int[] { 0, 0, 40 }, columnSizes(engine));
+    }
+
+    @Test
+    public void fixedColumnsWiderThanTheGridLeaveWeightsNothing() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_FIXED, 300);
+        engine.resolveColumns(200);
+
+        assertArrayEquals(new int[] { 300, 0 }, columnSizes(engine));
+    }
+
+    @Test
+    public void clearedTracksAreUniformAgain() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_FIXED, 30);
+        engine.clearColumnTracks();
+        engine.resolveColumns(100);
+
+        assertEquals(GridLayoutEngine.TRACK_WEIGHT,
+                engine.getColumnTrackType(0));
+        assertArrayEquals(new int[] { 50, 50 }, columnSizes(engine));
+    }
+
+    @Test
+    public void onlyWrapTracksNeedContentWhenExact() {
+        final GridLayoutEngine engine = newEngine(2, 2, 0);
+
+        assertFalse(engine.columnsNeedContent(GridLayoutEngine.EXACTLY));
+        assertTrue(engine.columnsNeedContent(GridLayoutEngine.AT_MOST));
+        assertTrue(engine.rowsNeedContent(GridLayoutEngine.UNSPECIFIED));
+
+        engine.setColumnTrack(1, GridLayoutEngine.TRACK_WRAP, 0);
+        assertTrue(engine.columnsNeedContent(GridLayoutEngine.EXACTLY));
+        assertFalse(engine.rowsNeedContent(GridLayoutEngine.EXACTLY));
+    }
+
+    @Test
+    public void singleColumnsTakeTheirWidestChild() {
+        final GridLayoutEngine engine = newEngine(1, 2, 10);
+
+        assertEquals(90, solveWidth(engine, new int[] { 0, 1, 0, 1, 1, 1 },
+                new int[] { 30, 45, 35 }, GridLayoutEngine.UNSPECIFIED, 0));
+        assertArrayEquals(new int[] { 45, 35 }, columnSizes(engine));
+    }
+
+    @Test
+    public void spanningChildGrowsItsColumnsEvenly() {
+        final GridLayoutEngine engine = newEngine(1, 3, 0);
+
+        // 30 + 20 + 0 are 60 short of the spanning child, 20 each
+        assertEquals(110, solveWidth(engine, new int[] { 0, 1, 1, 1, 0, 3 },
+                new int[] { 30, 20, 110 }, GridLayoutEngine.UNSPECIFIED, 0));
+        assertArrayEquals(new int[] { 50, 40, 20 }, columnSizes(engine));
+    }
+
+    @Test
+    public void spanningChildCountsTheSpaces() {
+        final GridLayoutEngine engine = newEngine(1, 2, 10);
+
+        // The space between the columns covers 10 of it, the rest is odd
+        solveWidth(engine, new int[] { 0, 2 }, new int[] { 21 },
+                GridLayoutEngine.UNSPECIFIED, 0);
+        assertArrayEquals(new int[] { 6, 5 }, columnSizes(engine));
+    }
+
+    @Test
+    public void spanningChildOnlyGrowsContentColumns() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_FIXED, 10);
+
+        solveWidth(engine, new int[] { 1, 1, 0, 2 }, new int[] { 5, 50 },
+                GridLayoutEngine.UNSPECIFIED, 0);
+        assertArrayEquals(new int[] { 10, 40 }, columnSizes(engine));
+    }
+
+    @Test
+    public void shorterSpansAreSolvedFirst() {
+        final GridLayoutEngine engine = newEngine(1, 3, 0);
+
+        // Listed first, the 3-span still sees the 80 of the 2-span and only
+        // spreads the 10 it misses; the other way round they would take 110
+        assertEquals(90, solveWidth(engine, new int[] { 0, 3, 0, 2 },
+                new int[] { 90, 80 }, GridLayoutEngine.UNSPECIFIED, 0));
+        assertArrayEquals(new int[] { 44, 43, 3 }, columnSizes(engine));
+    }
+
+    @Test
+    public void atMostKeepsContentThatFits() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+
+        assertEquals(70, solveWidth(engine, new int[] { 0, 1, 1, 1 },
+                new int[] { 30, 40 }, GridLayoutEngine.AT_MOST, 200));
+        assertArrayEquals(new int[] { 30, 40 }, columnSizes(engine));
+    }
+
+    @Test
+    public void atMostOverflowSharesTheLimit() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+        engine.setColumnTrack(0, GridLayoutEngine.TRACK_WRAP, 0);
+
+        // Too wide: the wrap column keeps its content, the weighted one
+        // takes what is left of the limit
+        assertEquals(200, solveWidth(engine, new int[] { 0, 1, 1, 1 },
+                new int[] { 30, 500 }, GridLayoutEngine.AT_MOST, 200));
+        assertArrayEquals(new int[] { 30, 170 }, columnSizes(engine));
+    }
+
+    @Test
+    public void exactlyOnlySizesWrapColumnsByContent() {
+        final GridLayoutEngine engine = newEngine(1, 3, 0);
+        engine.setColumnTrack(1, GridLayoutEngine.TRACK_WRAP, 0);
+
+        assertEquals(300, solveWidth(engine, new int[] { 0, 1, 1, 1, 2, 1 },
+                new int[] { 10, 60, 10 }, GridLayoutEngine.EXACTLY, 300));
+        assertArrayEquals(new int[] { 120, 60, 120 }, columnSizes(engine));
+    }
+
+    /**
+     * Measure and lay out two half-offset tiles side by side on one row: the
+     * first on columns [0, 1.5), the second on [1.5, 3).
+     *
+     * @return the rects of both tiles
+     */
+    private static int[] layoutHalves(GridLayoutEngine engine, int width,
+            int[] outSizes) {
+        final int half = GridLayoutEngine.toCellFixed(1.5f);
+        final int[] cells = {
+                0, GridLayoutEngine.CELL_ONE, 0, half,
+                0, GridLayoutEngine.CELL_ONE, half, half
+        };
+        final int[] params = filled(4, GridLayoutEngine.MATCH_PARENT);
+        final int[] rects = new int[2 * GridLayoutEngine.RECT_STRIDE];
+
+        engine.measure(exactly(width), exactly(50), 2, cells, params,
+                new int[4], outSizes);
+        engine.layout(2, cells, new int[] { GridLayoutEngine.GRAVITY_LEFT,
+                GridLayoutEngine.GRAVITY_LEFT }, outSizes, rects);
+        return rects;
+    }
+
+    @Test
+    public void fractionalCellsAreFixedPoint() {
+        assertEquals(128, GridLayoutEngine.toCellFixed(0.5f));
+        assertEquals(85, GridLayoutEngine.toCellFixed(1 / 3f));
+        assertEquals(0.5f, GridLayoutEngine.fromCellFixed(128), 0);
+
+        // [0.5, 1.25) touches columns 0 and 1
+        assertEquals(0, GridLayoutEngine.firstTrack(128));
+        assertEquals(2, GridLayoutEngine.endTrack(128, 192));
+        // A sliver still touches a column
+        assertEquals(1, GridLayoutEngine.endTrack(0, 1));
+    }
+
+    @Test
+    public void tilesSharingAFractionalLineMeet() {
+        // Columns of 34, 33 and 33: line 1.5 is 34 + 16.5, rounded to 51
+        final int[] sizes = new int[4];
+        final int[] rects = layoutHalves(newEngine(1, 3, 0), 100, sizes);
+
+        assertArrayEquals(new int[] { 0, 0, 51, 50 }, Arrays.copyOfRange(
+                rects, 0, 4));
+        assertArrayEquals(new int[] { 51, 0, 100, 50 }, Arrays.copyOfRange(
+                rects, 4, 8));
+        // Measure read the same pixels layout did
+        assertEquals(51, sizes[0]);
+        assertEquals(49, sizes[2]);
+    }
+
+    @Test
+    public void tilesSharingAFractionalLineKeepTheSpace() {
+        final GridLayoutEngine engine = newEngine(1, 3, 10);
+        final int[] sizes = new int[4];
+        final int[] rects = layoutHalves(engine, 100, sizes);
+
+        assertEquals(10, rects[4] - rects[2]);
+        assertEquals(100, rects[6]);
+        assertEquals(rects[2] - rects[0], sizes[0]);
+        assertEquals(rects[6] - rects[4], sizes[2]);
+        assertEquals(sizes[0], engine.getSpanWidth(0,
+                GridLayoutEngine.toCellFixed(1.5f)));
+    }
+
+    @Test
+    public void partialCellNeedsItsWholeColumns() {
+        final GridLayoutEngine engine = newEngine(1, 2, 0);
+        final int[] cells = {
+                0, GridLayoutEngine.CELL_ONE, 0,
+                GridLayoutEngine.toCellFixed(0.5f)
+        };
+
+        // 40 on half a column needs a column of 80
+        engine.solveIntrinsicWidth(1, cells, new int[] { 40, 0 },
+                GridLayoutEngine.UNSPECIFIED, 0);
+        assertArrayEquals(new int[] { 80, 0 }, columnSizes(engine));
+        assertEquals(40, engine.getSpanWidth(0, cells[3]));
+    }
+
+    @Test
+    public void fittingSizeIsKept() {
+        final int[] size = { 40, 30 };
+        assertFalse(GridLayoutEngine.fitToCell(size, 0, 40, 30));
+        assertArrayEquals(new int[] { 40, 30 }, size);
+    }
+
+    @Test
+    public void axisShrinkingMostDecides() {
+        // Width has to halve, height only to 3/4
+        assertArrayEquals(new int[] { 50, 25 }, fit(100, 50, 50, 40));
+        // Height has to halve, width only to 3/4
+        assertArrayEquals(new int[] { 25, 50 }, fit(50, 100, 40, 50));
+        // Both fit afterwards
+        assertArrayEquals(new int[] { 30, 20 }, fit(300, 200, 30, 30));
+    }
+
+    @Test
+    public void offsetIsHonoured() {
+        final int[] sizes = { 7, 7, 100, 50 };
+        assertTrue(GridLayoutEngine.fitToCell(sizes, 2, 50, 40));
+        assertArrayEquals(new int[] { 7, 7, 50, 25 }, sizes);
+    }
+
+    @Test
+    public void largeSizesDoNotOverflow() {
+        assertArrayEquals(new int[] { 1000000, 500000 }, fit(2000000000,
+                1000000000, 1000000, 1000000));
+    }
+
+    @Test
+    public void zeroSizesDoNotThrow() {
+        // A child measured 0 wide in a 0 wide cell
+        assertArrayEquals(new int[] { 0, 20 }, fit(0, 50, 0, 20));
+        assertArrayEquals(new int[] { 20, 0 }, fit(50, 0, 20, 0));
+        // A collapsed cell
+        assertArrayEquals(new int[] { 0, 0 }, fit(40, 30, 0, 0));
+        assertArrayEquals(new int[] { 0, 20 }, fit(40, 30, 0, 20));
+    }
+
+    @Test
+    public void negativeProvideClampsToZero() {
+        // Margins larger than the cells
+        assertArrayEquals(new int[] { 0, 20 }, fit(40, 50, -3, 20));
+        assertArrayEquals(new int[] { 0, 0 }, fit(40, 50, -3, -8));
+    }
+}
@@ -0,0 +1,139 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.dolphin.gridlayout.GridTestUtils.ONE;
+import static com.dolphin.gridlayout.GridTestUtils.exactly;
+import static com.dolphin.gridlayout.GridTestUtils.filled;
+import static com.dolphin.gridlayout.GridTestUtils.newEngine;
+import static com.dolphin.gridlayout.GridTestUtils.rect;
+import static com.dolphin.gridlayout.GridTestUtils.unspecified;
+
+import org.junit.Test;
+
+/**
+ * Tracks, placement and bounds solved by {@link GridLayoutSolver}.
+ *
+ * @author dolphinWang
+ */
+public class GridLayoutSolverTest {
+
+    @Test
+    public void exactSpecsSplitTheTracks() {
+        final float[] cellParams = {
+                0, 1, 0, 2,
+                0, 2, 2, 1,
+                1, 2, 0, 1
+        };
+        final GridSnapshot snapshot = new GridLayoutSolver(newEngine(3, 3, 0),
+                0, 3, cellParams, filled(6, GridLayoutEngine.MATCH_PARENT),
+                new int[6], new int[3]).solve(exactly(300), exactly(600));
+
+        assertTrue(snapshot.matches(exactly(300), exactly(600)));
+        assertEquals(300, snapshot.getWidth());
+        assertEquals(600, snapshot.getHeight());
+        assertArrayEquals(new int[] { 100, 100, 100 }, snapshot.getColumnSizes());
+        assertArrayEquals(new int[] { 200, 200, 200 }, snapshot.getRowSizes());
+        assertArrayEquals(new int[] { 0, 0, 200, 200 }, rect(snapshot, 0));
+        assertArrayEquals(new int[] { 200, 0, 300, 400 }, rect(snapshot, 1));
+        assertArrayEquals(new int[] { 0, 200, 100, 600 }, rect(snapshot, 2));
+        assertTrue(snapshot.hasCell(1, new CellSpec(0, 2 * ONE, 2 * ONE, ONE)));
+    }
+
+    @Test
+    public void spacesAreLeftBetweenCells() {
+        final float[] cellParams = {
+                0, 1, 0, 1,
+                1, 1, 1, 1
+        };
+        final GridSnapshot snapshot = new GridLayoutSolver(newEngine(2, 2, 10),
+                0, 2, cellParams, filled(4, GridLayoutEngine.MATCH_PARENT),
+                new int[4], new int[2]).solve(exactly(210), exactly(110));
+
+        assertArrayEquals(new int[] { 0, 0, 100, 50 }, rect(snapshot, 0));
+        assertArrayEquals(new int[] { 110, 60, 210, 110 }, rect(snapshot, 1));
+    }
+
+    @Test
+    public void unspecifiedHeightWrapsTheItems() {
+        final float[] cellParams = {
+                0, 1, 0, 1,
+                0, 1, 1, 1,
+                1, 1, 0, 2
+        };
+        final int[] params = {
+                GridLayoutEngine.MATCH_PARENT, GridLayoutEngine.WRAP_CONTENT,
+                GridLayoutEngine.MATCH_PARENT, GridLayoutEngine.WRAP_CONTENT,
+                GridLayoutEngine.MATCH_PARENT, GridLayoutEngine.WRAP_CONTENT
+        };
+        final int[] desired = {
+                50, 40,
+                50, 70,
+                100, 30
+        };
+        final GridSnapshot snapshot = new GridLayoutSolver(newEngine(2, 2, 0),
+                0, 3, cellParams, params, desired, new int[3]).solve(
+                exactly(200), unspecified());
+
+        // Each row is as tall as its tallest item
+        assertArrayEquals(new int[] { 70, 30 }, snapshot.getRowSizes());
+        assertEquals(100, snapshot.getHeight());
+        assertArrayEquals(new int[] { 100, 0, 200, 70 }, rect(snapshot, 1));
+        assertArrayEquals(new int[] { 0, 70, 200, 100 }, rect(snapshot, 2));
+    }
+
+    @Test
+    public void unspecifiedHeightWithoutContentCollapses() {
+        // What a pattern of sizeless tiles would get, see GridPatternTest
+        final GridSnapshot snapshot = new GridLayoutSolver(newEngine(2, 2, 0),
+                0, 1, new float[] { 0, 2, 0, 2 }, filled(2,
+                        GridLayoutEngine.MATCH_PARENT), new int[2], new int[1])
+                .solve(exactly(200), unspecified());
+
+        assertArrayEquals(new int[] { 0, 0 }, snapshot.getRowSizes());
+    }
+
+    @Test
+    public void autoFlowPlacesAroundFixedItems() {
+        final float[] cellParams = {
+                0, 1, 1, 1,
+                -1, 1, -1, 2,
+                -1, 1, -1, 1,
+                -1, 1, -1, 1
+        };
+        final GridSnapshot snapshot = new GridLayoutSolver(newEngine(3, 3, 0),
+                GridOccupancy.FLOW_ROW, 4, cellParams, filled(8,
+                        GridLayoutEngine.MATCH_PARENT), new int[8], new int[4])
+                .solve(exactly(300), exactly(300));
+
+        // Row 0 only has single cells left around the fixed item
+        assertTrue(snapshot.hasCell(1, new CellSpec(ONE, ONE, 0, 2 * ONE)));
+        assertTrue(snapshot.hasCell(2, new CellSpec(ONE, ONE, 2 * ONE, ONE)));
+        assertTrue(snapshot.hasCell(3, new CellSpec(2 * ONE, ONE, 0, ONE)));
+        assertArrayEquals(new int[] { 0, 100, 200, 200 }, rect(snapshot, 1));
+    }
+
+    @Test
+    public void inputIsCopied() {
+        final float[] cellParams = { 0, 1, 0, 1 };
+        final int[] params = filled(2, GridLayoutEngine.MATCH_PARENT);
+        final GridLayoutEngine engine = newEngine(2, 2, 0);
+        final GridLayoutSolver solver = new GridLayoutSolver(engine, 0, 1,
+                cellParams, params, new int[2], new int[1]);
+
+        cellParams[2] = 1;
+        params[0] = 10;
+        engine.setColumnCount(4);
+
+        final GridSnapshot snapshot = solver.solve(exactly(200), exactly(200));
+        assertEquals(2, snapshot.getColumnSizes().length);
+        assertArrayEquals(new int[] { 0, 0, 100, 100 }, rect(snapshot, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortArraysAreRejected() {
+        new GridLayoutSolver(newEngine(2, 2, 0), 0, 2, new float[4],
+                new int[4], new int[4], new int[2]);
+    }
+}
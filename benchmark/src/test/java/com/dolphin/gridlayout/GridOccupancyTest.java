@@ -0,0 +1,134 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Occupancy bits and auto-flow placement of {@link GridOccupancy}.
+ *
+ * @author dolphinWang
+ */
+public class GridOccupancyTest {
+
+    private final GridOccupancy mOccupancy = new GridOccupancy();
+    private final int[] mOut = new int[2];
+
+    @Before
+    public void setUp() {
+        mOccupancy.reset(3, 3);
+    }
+
+    private int[] place(int row, int column, int rowSpan, int columnSpan,
+            int flow) {
+        assertTrue(mOccupancy.place(row, column, rowSpan, columnSpan, flow,
+                mOut));
+        return mOut.clone();
+    }
+
+    @Test
+    public void occupyReportsOverlaps() {
+        assertFalse(mOccupancy.occupy(0, 0, 2, 2));
+        assertTrue(mOccupancy.isOccupied(1, 1));
+        assertFalse(mOccupancy.isOccupied(2, 2));
+        assertTrue(mOccupancy.occupy(1, 1, 2, 2));
+        assertEquals(1, mOccupancy.getOverlapCount());
+
+        // Outside the grid is ignored, not an overlap
+        assertFalse(mOccupancy.occupy(-1, 5, 1, 1));
+        assertFalse(mOccupancy.isOccupied(-1, 5));
+        assertEquals(1, mOccupancy.getOverlapCount());
+    }
+
+    @Test
+    public void resetFreesEverything() {
+        mOccupancy.occupy(0, 0, 3, 3);
+        mOccupancy.reset(3, 3);
+
+        assertTrue(mOccupancy.isFree(0, 0, 3, 3));
+        assertEquals(0, mOccupancy.getOverlapCount());
+    }
+
+    @Test
+    public void rowFlowMovesForward() {
+        final int flow = GridOccupancy.FLOW_ROW;
+        assertArrayEquals(new int[] { 0, 0 }, place(-1, -1, 1, 2, flow));
+        // Does not fit in the last column, goes on the next row
+        assertArrayEquals(new int[] { 1, 0 }, place(-1, -1, 1, 2, flow));
+        // The hole left in row 0 stays behind the cursor
+        assertArrayEquals(new int[] { 1, 2 }, place(-1, -1, 1, 1, flow));
+        assertArrayEquals(new int[] { 2, 0 }, place(-1, -1, 1, 1, flow));
+    }
+
+    @Test
+    public void denseRowFlowFillsHoles() {
+        final int flow = GridOccupancy.FLOW_ROW | GridOccupancy.FLOW_DENSE;
+        assertArrayEquals(new int[] { 0, 0 }, place(-1, -1, 1, 2, flow));
+        assertArrayEquals(new int[] { 1, 0 }, place(-1, -1, 1, 2, flow));
+        assertArrayEquals(new int[] { 0, 2 }, place(-1, -1, 1, 1, flow));
+        assertArrayEquals(new int[] { 1, 2 }, place(-1, -1, 1, 1, flow));
+    }
+
+    @Test
+    public void columnFlowFillsColumns() {
+        final int flow = GridOccupancy.FLOW_COLUMN;
+        assertArrayEquals(new int[] { 0, 0 }, place(-1, -1, 2, 1, flow));
+        assertArrayEquals(new int[] { 0, 1 }, place(-1, -1, 2, 1, flow));
+        assertArrayEquals(new int[] { 2, 1 }, place(-1, -1, 1, 1, flow));
+    }
+
+    @Test
+    public void fixedCellsAreWorkedAround() {
+        mOccupancy.occupy(0, 1, 1, 1);
+
+        final int flow = GridOccupancy.FLOW_ROW;
+        assertArrayEquals(new int[] { 0, 0 }, place(-1, -1, 1, 1, flow));
+        assertArrayEquals(new int[] { 0, 2 }, place(-1, -1, 1, 1, flow));
+    }
+
+    @Test
+    public void fixedColumnSearchesRows() {
+        mOccupancy.occupy(0, 2, 2, 1);
+
+        assertArrayEquals(new int[] { 2, 2 }, place(-1, 2, 1, 1,
+                GridOccupancy.FLOW_ROW));
+    }
+
+    @Test
+    public void fixedRowSearchesColumns() {
+        mOccupancy.occupy(1, 0, 1, 2);
+
+        assertArrayEquals(new int[] { 1, 2 }, place(1, -1, 1, 1,
+                GridOccupancy.FLOW_ROW));
+    }
+
+    @Test
+    public void noRoomTakesNothing() {
+        mOccupancy.occupy(0, 0, 3, 2);
+
+        assertFalse(mOccupancy.place(-1, -1, 1, 2, GridOccupancy.FLOW_ROW,
+                mOut));
+        assertFalse(mOccupancy.place(-1, -1, 4, 1, GridOccupancy.FLOW_ROW,
+                mOut));
+        assertFalse(mOccupancy.place(0, 0, 1, 1, GridOccupancy.FLOW_ROW,
+                mOut));
+        assertTrue(mOccupancy.isFree(0, 2, 3, 1));
+    }
+
+    @Test
+    public void takenWordsAreSkipped() {
+        // More than one word of bits, most of them taken
+        mOccupancy.reset(10, 10);
+        mOccupancy.occupy(0, 0, 9, 10);
+        mOccupancy.occupy(9, 0, 1, 5);
+
+        assertArrayEquals(new int[] { 9, 5 }, place(-1, -1, 1, 1,
+                GridOccupancy.FLOW_ROW | GridOccupancy.FLOW_DENSE));
+        assertArrayEquals(new int[] { 9, 6 }, place(-1, -1, 1, 1,
+                GridOccupancy.FLOW_ROW));
+    }
+}
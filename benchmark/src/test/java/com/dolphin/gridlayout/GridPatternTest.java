@@ -0,0 +1,149 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static com.dolphin.gridlayout.GridTestUtils.atMost;
+import static com.dolphin.gridlayout.GridTestUtils.exactly;
+import static com.dolphin.gridlayout.GridTestUtils.newEngine;
+import static com.dolphin.gridlayout.GridTestUtils.rect;
+import static com.dolphin.gridlayout.GridTestUtils.unspecified;
+
+import org.junit.Test;
+
+/**
+ * Shared layouts and their cache in {@link GridPattern}.
+ *
+ * @author dolphinWang
+ */
+public class GridPatternTest {
+
+    /**
+     * A 2x2 tile, a 1x1 on its right and a full-width banner below.
+     */
+    private static final int[] MOSAIC = {
+            0, 2, 0, 2,
+            0, 1, 2, 1,
+            2, 1, 0, 3
+    };
+
+    private static GridLayoutEngine newSetup() {
+        return newEngine(3, 3, 0);
+    }
+
+    private static GridPattern newPattern(String name) {
+        return new GridPattern(name, newSetup(), MOSAIC);
+    }
+
+    @Test
+    public void tilesFillTheirCells() {
+        final GridSnapshot layout = newPattern("fill").getLayout(exactly(300),
+                exactly(300), 0, 0, 0, 0);
+
+        assertNotNull(layout);
+        assertEquals(3, layout.getChildCount());
+        assertArrayEquals(new int[] { 0, 0, 200, 200 }, rect(layout, 0));
+        assertArrayEquals(new int[] { 200, 0, 300, 100 }, rect(layout, 1));
+        assertArrayEquals(new int[] { 0, 200, 300, 300 }, rect(layout, 2));
+    }
+
+    @Test
+    public void paddingMovesTheTiles() {
+        final GridSnapshot layout = newPattern("padding").getLayout(
+                exactly(320), exactly(300), 10, 0, 10, 0);
+
+        assertArrayEquals(new int[] { 10, 0, 210, 200 }, rect(layout, 0));
+        assertArrayEquals(new int[] { 210, 0, 310, 100 }, rect(layout, 1));
+    }
+
+    @Test
+    public void contentSizedTracksAreNotShared() {
+        final GridPattern pattern = newPattern("content");
+
+        // A list row gets an UNSPECIFIED height, sizeless tiles would
+        // collapse every row
+        assertNull(pattern.getLayout(exactly(1080), unspecified(), 0, 0, 0, 0));
+        assertNull(pattern.getLayout(exactly(1080), atMost(1920), 0, 0, 0, 0));
+        assertNull(pattern.getLayout(atMost(1080), exactly(1080), 0, 0, 0, 0));
+
+        final GridLayoutEngine setup = newSetup();
+        setup.setRowTrack(2, GridLayoutEngine.TRACK_WRAP, 0);
+        assertNull(new GridPattern("wrap", setup, MOSAIC).getLayout(
+                exactly(1080), exactly(1080), 0, 0, 0, 0));
+    }
+
+    @Test
+    public void layoutIsSolvedOncePerKey() {
+        final GridPattern pattern = newPattern("once");
+        final GridSnapshot layout = pattern.getLayout(exactly(300),
+                exactly(300), 0, 0, 0, 0);
+
+        assertSame(layout, pattern.getLayout(exactly(300), exactly(300), 0, 0,
+                0, 0));
+        assertNotSame(layout, pattern.getLayout(exactly(300), exactly(300), 0,
+                1, 0, 0));
+        assertNotSame(layout, pattern.getLayout(exactly(300), exactly(600), 0,
+                0, 0, 0));
+    }
+
+    @Test
+    public void oldestLayoutIsEvicted() {
+        final GridPattern pattern = newPattern("evict");
+        final GridSnapshot[] layouts = new GridSnapshot[5];
+        for (int i = 0; i < layouts.length; i++) {
+            layouts[i] = pattern.getLayout(exactly(100 + i), exactly(300), 0,
+                    0, 0, 0);
+        }
+
+        // Four are kept, the first one went
+        for (int i = 1; i < layouts.length; i++) {
+            assertSame(layouts[i], pattern.getLayout(exactly(100 + i),
+                    exactly(300), 0, 0, 0, 0));
+        }
+        final GridSnapshot again = pattern.getLayout(exactly(100),
+                exactly(300), 0, 0, 0, 0);
+        assertNotSame(layouts[0], again);
+        assertArrayEquals(layouts[0].getRects(), again.getRects());
+
+        // Solving it again pushed out the next oldest only
+        assertSame(layouts[2], pattern.getLayout(exactly(102), exactly(300),
+                0, 0, 0, 0));
+        assertNotSame(layouts[1], pattern.getLayout(exactly(101),
+                exactly(300), 0, 0, 0, 0));
+    }
+
+    @Test
+    public void setupAndCellsAreCopied() {
+        final GridLayoutEngine setup = newSetup();
+        final int[] cells = MOSAIC.clone();
+        final GridPattern pattern = new GridPattern("copied", setup, cells);
+
+        setup.setColumnCount(6);
+        cells[GridLayoutEngine.CELL_COLUMN_SPEC] = 1;
+
+        final int[] cell = new int[GridLayoutEngine.CELL_STRIDE];
+        pattern.getCellSpec(0, cell);
+        assertArrayEquals(new int[] { 0, 2, 0, 2 }, cell);
+        assertEquals(3, pattern.getEngine().getColumnCount());
+        assertArrayEquals(new int[] { 0, 0, 200, 200 }, rect(pattern.getLayout(
+                exactly(300), exactly(300), 0, 0, 0, 0), 0));
+    }
+
+    @Test
+    public void patternsAreFoundByName() {
+        final GridPattern pattern = newPattern("registered");
+        GridPattern.register(pattern);
+
+        assertSame(pattern, GridPattern.get("registered"));
+        assertNull(GridPattern.get("unknown"));
+        assertEquals(3, pattern.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void partialCellsAreRejected() {
+        new GridPattern("partial", newSetup(), new int[] { 0, 1, 0 });
+    }
+}
@@ -0,0 +1,260 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static com.dolphin.gridlayout.GridTestUtils.exactly;
+import static com.dolphin.gridlayout.GridTestUtils.filled;
+import static com.dolphin.gridlayout.GridTestUtils.newEngine;
+import static com.dolphin.gridlayout.GridTestUtils.unspecified;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reading, handing over and writing back of {@link GridSnapshotFile}.
+ *
+ * @author dolphinWang
+ */
+public class GridSnapshotFileTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Runs file work right away and counts it.
+     */
+    private final List<Runnable> mFileTasks = new ArrayList<Runnable>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mFileTasks.add(command);
+            command.run();
+        }
+    };
+
+    /**
+     * Stands in for the main looper, run by {@link #runCallbacks()}.
+     */
+    private final List<Runnable> mCallbacks = new ArrayList<Runnable>();
+    private final Executor mCallbackExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mCallbacks.add(command);
+        }
+    };
+
+    private int mLoadedCount;
+    private IOException mWriteError;
+
+    private final GridSnapshotFile.Listener mListener =
+            new GridSnapshotFile.Listener() {
+                @Override
+                public void onSnapshotFileLoaded(GridSnapshotFile file) {
+                    mLoadedCount++;
+                }
+
+                @Override
+                public void onSnapshotFileWriteFailed(GridSnapshotFile file,
+                        IOException e) {
+                    mWriteError = e;
+                }
+            };
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "grid");
+    }
+
+    private static GridSnapshot solve(int width) {
+        return new GridLayoutSolver(newEngine(2, 2, 0), 0, 2, new float[] {
+                0, 1, 0, 1,
+                1, 1, 0, 2
+        }, filled(4, GridLayoutEngine.MATCH_PARENT), new int[4], new int[2])
+                .solve(exactly(width), exactly(200));
+    }
+
+    private GridSnapshotFile newFile() {
+        return new GridSnapshotFile(mFile, mExecutor, mCallbackExecutor,
+                mListener);
+    }
+
+    private void runCallbacks() {
+        final List<Runnable> callbacks = new ArrayList<Runnable>(mCallbacks);
+        mCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    private void writeFile(byte[] data) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+        final RandomAccessFile in = new RandomAccessFile(mFile, "r");
+        try {
+            final byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void snapshotReadBeforeFirstMeasureIsApplied() throws IOException {
+        final GridSnapshot saved = solve(200);
+        writeFile(saved.toByteArray());
+
+        // Cold start: set in onCreate, read and handed over before the
+        // first traversal
+        final GridSnapshotFile file = newFile();
+        file.load();
+        assertFalse(file.isLoaded());
+        runCallbacks();
+
+        assertEquals(1, mLoadedCount);
+        assertTrue(file.hasLoadedSnapshot());
+        final GridSnapshot applied = file.takeLoadedSnapshot();
+        assertNotNull(applied);
+        assertTrue(applied.matches(exactly(200), exactly(200)));
+        assertArrayEquals(saved.getRects(), applied.getRects());
+
+        // Only once
+        assertNull(file.takeLoadedSnapshot());
+    }
+
+    @Test
+    public void snapshotOfAnySpecIsApplied() throws IOException {
+        // A spec of 0 is a spec like any other, not "nothing solved"
+        final GridSnapshot saved = new GridSnapshot(unspecified(),
+                unspecified(), 0, 0, 0, new int[0], new int[0], 0, new int[0],
+                new int[0]);
+        writeFile(saved.toByteArray());
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        runCallbacks();
+
+        final GridSnapshot applied = file.takeLoadedSnapshot();
+        assertNotNull(applied);
+        assertTrue(applied.matches(unspecified(), unspecified(), 0));
+    }
+
+    @Test
+    public void snapshotReadAfterSolveIsDropped() throws IOException {
+        writeFile(solve(200).toByteArray());
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        file.onSolved();
+        runCallbacks();
+
+        assertEquals(1, mLoadedCount);
+        assertFalse(file.hasLoadedSnapshot());
+        assertNull(file.takeLoadedSnapshot());
+    }
+
+    @Test
+    public void snapshotNotTakenBeforeSolveIsDropped() throws IOException {
+        writeFile(solve(200).toByteArray());
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        runCallbacks();
+        file.onSolved();
+
+        assertNull(file.takeLoadedSnapshot());
+    }
+
+    @Test
+    public void solvedLayoutIsWrittenOnceLoaded() throws IOException {
+        final GridSnapshotFile file = newFile();
+        file.load();
+        file.onSolved();
+
+        // Not before the read, an unchanged layout would be written again
+        assertFalse(file.claimWrite());
+        runCallbacks();
+        assertNull(file.takeLoadedSnapshot());
+
+        assertTrue(file.claimWrite());
+        assertFalse(file.claimWrite());
+        final GridSnapshot solved = solve(300);
+        file.write(solved);
+
+        assertNull(mWriteError);
+        assertArrayEquals(solved.toByteArray(), readFile());
+        assertFalse(new File(mFile.getPath() + ".new").exists());
+    }
+
+    @Test
+    public void unchangedLayoutIsNotWritten() throws IOException {
+        final GridSnapshot saved = solve(200);
+        writeFile(saved.toByteArray());
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        runCallbacks();
+        file.onSolved();
+        assertTrue(file.claimWrite());
+
+        final int reads = mFileTasks.size();
+        file.write(solve(200));
+        assertEquals(reads, mFileTasks.size());
+
+        file.write(solve(300));
+        assertEquals(reads + 1, mFileTasks.size());
+        assertArrayEquals(solve(300).toByteArray(), readFile());
+    }
+
+    @Test
+    public void brokenFileReadsAsNothing() throws IOException {
+        writeFile(new byte[] { 1, 2, 3 });
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        runCallbacks();
+
+        assertEquals(1, mLoadedCount);
+        assertTrue(file.isLoaded());
+        assertNull(file.takeLoadedSnapshot());
+    }
+
+    @Test
+    public void failedWriteIsReported() {
+        // A directory where the file should be
+        assertTrue(new File(mFile.getPath() + ".new").mkdir());
+
+        final GridSnapshotFile file = newFile();
+        file.load();
+        runCallbacks();
+        file.onSolved();
+        assertTrue(file.claimWrite());
+        file.write(solve(200));
+
+        assertNotNull(mWriteError);
+        assertFalse(mFile.exists());
+    }
+}
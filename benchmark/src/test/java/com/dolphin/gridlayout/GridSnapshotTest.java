@@ -0,0 +1,119 @@
+package com.dolphin.gridlayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static com.dolphin.gridlayout.GridTestUtils.atMost;
+import static com.dolphin.gridlayout.GridTestUtils.exactly;
+import static com.dolphin.gridlayout.GridTestUtils.unspecified;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Binary round-trip and key matching of {@link GridSnapshot}.
+ *
+ * @author dolphinWang
+ */
+public class GridSnapshotTest {
+
+    private static final int WIDTH_SPEC = exactly(1080);
+    private static final int HEIGHT_SPEC = unspecified();
+
+    private static GridSnapshot newSnapshot() {
+        // Negative and large values too, the varints are zigzag encoded
+        final int[] cells = {
+                0, 256, 0, 512,
+                256, 256, 512, 256,
+                -256, Integer.MAX_VALUE, Integer.MIN_VALUE, 1
+        };
+        final int[] rects = {
+                0, 0, 719, 359,
+                720, 360, 1079, 719,
+                -5, -300000, 70000, 2000000000
+        };
+        return new GridSnapshot(WIDTH_SPEC, HEIGHT_SPEC, -123456, 1080, 720,
+                new int[] { 360, 360, 360 }, new int[] { 240, 240, 240 }, 3,
+                cells, rects);
+    }
+
+    @Test
+    public void roundTripKeepsEverything() {
+        final GridSnapshot snapshot = newSnapshot();
+        final GridSnapshot read = GridSnapshot.fromByteArray(snapshot
+                .toByteArray());
+
+        assertNotNull(read);
+        assertTrue(read.matches(WIDTH_SPEC, HEIGHT_SPEC, -123456));
+        assertEquals(1080, read.getWidth());
+        assertEquals(720, read.getHeight());
+        assertArrayEquals(snapshot.getColumnSizes(), read.getColumnSizes());
+        assertArrayEquals(snapshot.getRowSizes(), read.getRowSizes());
+        assertEquals(3, read.getChildCount());
+        assertArrayEquals(snapshot.getRects(), read.getRects());
+        assertTrue(read.hasCell(1, new CellSpec(256, 256, 512, 256)));
+        assertTrue(read.hasCell(2, new CellSpec(-256, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, 1)));
+    }
+
+    @Test
+    public void roundTripIsStable() {
+        final byte[] data = newSnapshot().toByteArray();
+        assertArrayEquals(data, GridSnapshot.fromByteArray(data).toByteArray());
+    }
+
+    @Test
+    public void emptyGridRoundTrips() {
+        final GridSnapshot read = GridSnapshot.fromByteArray(new GridSnapshot(
+                0, 0, 0, 0, 0, new int[0], new int[0], 0, new int[0],
+                new int[0]).toByteArray());
+
+        assertNotNull(read);
+        assertEquals(0, read.getChildCount());
+        assertEquals(0, read.getColumnSizes().length);
+    }
+
+    @Test
+    public void matchesTheKeyItWasTakenFor() {
+        final GridSnapshot snapshot = newSnapshot();
+
+        assertTrue(snapshot.matches(WIDTH_SPEC, HEIGHT_SPEC));
+        assertFalse(snapshot.matches(WIDTH_SPEC, HEIGHT_SPEC, 0));
+        assertFalse(snapshot.matches(atMost(1080), HEIGHT_SPEC, -123456));
+        assertFalse(snapshot.matches(WIDTH_SPEC, WIDTH_SPEC));
+    }
+
+    @Test
+    public void hasCellChecksIndexAndCell() {
+        final GridSnapshot snapshot = newSnapshot();
+
+        assertTrue(snapshot.hasCell(0, new CellSpec(0, 256, 0, 512)));
+        assertFalse(snapshot.hasCell(0, new CellSpec(0, 256, 0, 256)));
+        assertFalse(snapshot.hasCell(3, new CellSpec(0, 256, 0, 512)));
+        assertFalse(snapshot.hasCell(-1, new CellSpec(0, 256, 0, 512)));
+    }
+
+    @Test
+    public void brokenDataReadsAsNull() {
+        final byte[] data = newSnapshot().toByteArray();
+
+        assertNull(GridSnapshot.fromByteArray(null));
+        assertNull(GridSnapshot.fromByteArray(new byte[0]));
+        for (int length = 1; length < data.length; length++) {
+            assertNull("Cut at " + length,
+                    GridSnapshot.fromByteArray(Arrays.copyOf(data, length)));
+        }
+
+        final byte[] badMagic = data.clone();
+        badMagic[0] ^= 0x01;
+        assertNull(GridSnapshot.fromByteArray(badMagic));
+
+        final byte[] otherVersion = data.clone();
+        otherVersion[7]++;
+        assertNull(GridSnapshot.fromByteArray(otherVersion));
+    }
+}
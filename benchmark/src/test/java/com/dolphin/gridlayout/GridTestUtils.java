@@ -0,0 +1,52 @@
+package com.dolphin.gridlayout;
+
+import java.util.Arrays;
+
+/**
+ * Specs, engines and rects shared by the grid tests.
+ *
+ * @author dolphinWang
+ */
+final class GridTestUtils {
+
+    static final int ONE = GridLayoutEngine.CELL_ONE;
+
+    private GridTestUtils() {
+    }
+
+    static int exactly(int size) {
+        return GridLayoutEngine.makeMeasureSpec(size, GridLayoutEngine.EXACTLY);
+    }
+
+    static int atMost(int size) {
+        return GridLayoutEngine.makeMeasureSpec(size, GridLayoutEngine.AT_MOST);
+    }
+
+    static int unspecified() {
+        return GridLayoutEngine.makeMeasureSpec(0, GridLayoutEngine.UNSPECIFIED);
+    }
+
+    static GridLayoutEngine newEngine(int rowCount, int columnCount, int space) {
+        final GridLayoutEngine engine = new GridLayoutEngine();
+        engine.setRowCount(rowCount);
+        engine.setColumnCount(columnCount);
+        engine.setItemHorizontalSpace(space);
+        engine.setItemVerticalSpace(space);
+        return engine;
+    }
+
+    static int[] filled(int count, int value) {
+        final int[] values = new int[count];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    /**
+     * @return left, top, right and bottom of a child in the snapshot
+     */
+    static int[] rect(GridSnapshot snapshot, int index) {
+        return Arrays.copyOfRange(snapshot.getRects(), index
+                * GridLayoutEngine.RECT_STRIDE, (index + 1)
+                * GridLayoutEngine.RECT_STRIDE);
+    }
+}
@@ -0,0 +1,133 @@
+package com.dolphin.gridlayout.benchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.dolphin.gridlayout.GridLayoutEngine;
+
+/**
+ * A steady-state measure + layout pass of a fixed grid must not allocate,
+ * for every grid size the benchmarks use and every height mode. Skipped on
+ * JVMs that can not count what a thread allocates.
+ *
+ * @author dolphinWang
+ */
+@RunWith(Parameterized.class)
+public class SteadyStateAllocationTest {
+
+    private static final int[] GRID_SIZES = new int[] { 3, 8, 16, 32, 64 };
+
+    private static final int CELL_SIZE = 48;
+    private static final int ITEM_SPACE = 2;
+
+    private static final int WARM_UP_PASSES = 20000;
+    private static final int CHECKED_PASSES = 1000;
+
+    private static com.sun.management.ThreadMXBean sThreads;
+
+    private final int mGridSize;
+    private final int mHeightMode;
+
+    @Parameters(name = "{0}x{0} {2}")
+    public static Collection<Object[]> parameters() {
+        final List<Object[]> parameters = new ArrayList<Object[]>();
+        for (int gridSize : GRID_SIZES) {
+            parameters.add(new Object[] { gridSize, GridLayoutEngine.EXACTLY,
+                    "EXACTLY" });
+            parameters.add(new Object[] { gridSize,
+                    GridLayoutEngine.UNSPECIFIED, "UNSPECIFIED" });
+            parameters.add(new Object[] { gridSize, GridLayoutEngine.AT_MOST,
+                    "AT_MOST" });
+        }
+        return parameters;
+    }
+
+    public SteadyStateAllocationTest(int gridSize, int heightMode,
+            String modeName) {
+        mGridSize = gridSize;
+        mHeightMode = heightMode;
+    }
+
+    @BeforeClass
+    public static void enableAllocationCounting() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("No allocation counting on this JVM",
+                threads instanceof com.sun.management.ThreadMXBean);
+        sThreads = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue("No allocation counting on this JVM",
+                sThreads.isThreadAllocatedMemorySupported());
+        sThreads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void steadyStatePassDoesNotAllocate() {
+        final long threadId = Thread.currentThread().getId();
+        final Pass pass = new Pass(mGridSize, mHeightMode);
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            pass.run();
+        }
+
+        // What reading the counter costs by itself
+        final long overheadStart = sThreads.getThreadAllocatedBytes(threadId);
+        final long overhead = sThreads.getThreadAllocatedBytes(threadId)
+                - overheadStart;
+
+        final long start = sThreads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < CHECKED_PASSES; i++) {
+            pass.run();
+        }
+        final long allocated = sThreads.getThreadAllocatedBytes(threadId)
+                - start - overhead;
+
+        assertEquals("Bytes allocated over " + CHECKED_PASSES + " passes", 0,
+                Math.max(0, allocated));
+    }
+
+    private static class Pass {
+        final GridLayoutEngine engine = new GridLayoutEngine();
+        final SyntheticGrid grid;
+        final int widthSpec;
+        final int heightSpec;
+        final int[] sizes;
+        final int[] rects;
+
+        Pass(int gridSize, int heightMode) {
+            grid = new SyntheticGrid(gridSize, CELL_SIZE, 42L);
+
+            engine.setRowCount(gridSize);
+            engine.setColumnCount(gridSize);
+            engine.setItemHorizontalSpace(ITEM_SPACE);
+            engine.setItemVerticalSpace(ITEM_SPACE);
+            engine.setPadding(ITEM_SPACE, ITEM_SPACE, ITEM_SPACE, ITEM_SPACE);
+
+            final int size = gridSize * (CELL_SIZE + ITEM_SPACE) + ITEM_SPACE;
+            widthSpec = GridLayoutEngine.makeMeasureSpec(size,
+                    GridLayoutEngine.EXACTLY);
+            heightSpec = GridLayoutEngine.makeMeasureSpec(
+                    heightMode == GridLayoutEngine.UNSPECIFIED ? 0 : size,
+                    heightMode);
+
+            sizes = grid.newSizes();
+            rects = grid.newRects();
+        }
+
+        void run() {
+            engine.measure(widthSpec, heightSpec, grid.count, grid.cells,
+                    grid.params, grid.desired, sizes);
+            engine.layout(grid.count, grid.cells, grid.gravities, sizes, rects);
+            engine.commitTracks();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.dolphin.gridlayout;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.HapticFeedbackConstants;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+
+/**
+ * Long-press drag of a child of a {@link DolphinGridLayout} to other cells.
+ * The dragged child is drawn from a bitmap taken when the drag starts while
+ * the real view stays hidden in the cell it is heading for; the cell under
+ * the finger comes from the grid lines, and the other children reflow only
+ * when that cell changes.
+ *
+ * @author dolphinWang
+ */
+class CellDragHelper implements Runnable {
+
+    private static final int DRAG_ALPHA = 0xCC;
+
+    private final DolphinGridLayout mGrid;
+    private final int mTouchSlop;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Child under the finger while waiting for the long press. Positions
+     * below are in content coordinates.
+     */
+    private View mCandidate;
+    private float mDownX;
+    private float mDownY;
+
+    private View mDragged;
+    private Bitmap mBitmap;
+
+    /**
+     * Where the finger holds the bitmap, and which cell of the child.
+     */
+    private float mGrabX;
+    private float mGrabY;
+    private int mGrabRow;
+    private int mGrabColumn;
+
+    private float mX;
+    private float mY;
+    private int mTargetRow;
+    private int mTargetColumn;
+
+    CellDragHelper(DolphinGridLayout grid) {
+        mGrid = grid;
+        mTouchSlop = ViewConfiguration.get(grid.getContext())
+                .getScaledTouchSlop();
+        mPaint.setAlpha(DRAG_ALPHA);
+    }
+
+    /**
+     * Follow a touch event, either waiting for the long press or moving the
+     * drag.
+     *
+     * @return true while a drag is running
+     */
+    boolean onTouchEvent(MotionEvent ev) {
+        final int action = ev.getAction() & MotionEvent.ACTION_MASK;
+        // Grid lines and children are in content coordinates, same as
+        // findChildAt
+        final float x = ev.getX() + mGrid.getScrollX();
+        final float y = ev.getY() + mGrid.getScrollY();
+
+        if (mDragged == null) {
+            switch (action) {
+                case MotionEvent.ACTION_DOWN:
+                    mGrid.removeCallbacks(this);
+                    mCandidate = mGrid.findChildAt((int) ev.getX(),
+                            (int) ev.getY());
+                    mDownX = x;
+                    mDownY = y;
+                    if (mCandidate != null) {
+                        mGrid.postDelayed(this,
+                                ViewConfiguration.getLongPressTimeout());
+                    }
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    if (mCandidate != null
+                            && (Math.abs(x - mDownX) > mTouchSlop || Math.abs(y
+                                    - mDownY) > mTouchSlop)) {
+                        cancelLongPress();
+                    }
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    cancelLongPress();
+                    break;
+            }
+            return false;
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE:
+                mX = x;
+                mY = y;
+                moveTarget();
+                mGrid.invalidate();
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                stopDrag();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * @return true while waiting for a long press on a child
+     */
+    boolean isPressing() {
+        return mCandidate != null;
+    }
+
+    @Override
+    public void run() {
+        final View child = mCandidate;
+        mCandidate = null;
+        if (child == null || child.getParent() != mGrid
+                || mGrid.isDisallowingIntercept()) {
+            return;
+        }
+
+        startDrag(child);
+    }
+
+    private void startDrag(View child) {
+        final int width = child.getWidth();
+        final int height = child.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        // Draw the child once, frames only blit this
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        child.draw(new Canvas(mBitmap));
+
+        final CellSpec spec = ((DolphinGridLayout.LayoutParams) child
+                .getLayoutParams()).getCellSpec();
+        final GridLayoutEngine engine = mGrid.getEngine();
+        mGrabX = mDownX - child.getLeft();
+        mGrabY = mDownY - child.getTop();
+        mGrabRow = Math.max(0, engine.findRowAt((int) mDownY)
+                - spec.getFirstRow());
+        mGrabColumn = Math.max(0, engine.findColumnAt((int) mDownX)
+                - spec.getFirstColumn());
+        mTargetRow = spec.getFirstRow();
+        mTargetColumn = spec.getFirstColumn();
+        mX = mDownX;
+        mY = mDownY;
+
+        mDragged = child;
+        child.setVisibility(View.INVISIBLE);
+        mGrid.onCellDragStarted(child);
+
+        final ViewParent parent = mGrid.getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+        mGrid.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        mGrid.invalidate();
+    }
+
+    /**
+     * Find the cell the dragged child would take under the finger, and
+     * reflow the grid if it changed.
+     */
+    private void moveTarget() {
+        if (mDragged.getParent() != mGrid) {
+            // Removed while dragged
+            stopDrag();
+            return;
+        }
+
+        final GridLayoutEngine engine = mGrid.getEngine();
+        final int row = engine.findRowAt((int) mY);
+        final int column = engine.findColumnAt((int) mX);
+        if (row < 0 || column < 0) {
+            // Outside the grid, keep the last cell
+            return;
+        }
+
+        final CellSpec spec = ((DolphinGridLayout.LayoutParams) mDragged
+                .getLayoutParams()).getCellSpec();
+        final int rowSpan = spec.getEndRow() - spec.getFirstRow();
+        final int columnSpan = spec.getEndColumn() - spec.getFirstColumn();
+
+        final int targetRow = clamp(row - mGrabRow, engine.getRowCount()
+                - rowSpan);
+        final int targetColumn = clamp(column - mGrabColumn,
+                engine.getColumnCount() - columnSpan);
+        if (targetRow == mTargetRow && targetColumn == mTargetColumn) {
+            return;
+        }
+
+        mTargetRow = targetRow;
+        mTargetColumn = targetColumn;
+        mGrid.reflowAround(mDragged, targetRow, targetColumn);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    private void cancelLongPress() {
+        mGrid.removeCallbacks(this);
+        mCandidate = null;
+    }
+
+    /**
+     * Drop the dragged child where it is heading, or give up a pending long
+     * press.
+     */
+    void stopDrag() {
+        cancelLongPress();
+        if (mDragged == null) {
+            return;
+        }
+
+        final View dragged = mDragged;
+        mDragged = null;
+        dragged.setVisibility(View.VISIBLE);
+        mBitmap.recycle();
+        mBitmap = null;
+
+        mGrid.onCellDragEnded(dragged);
+        mGrid.invalidate();
+    }
+
+    /**
+     * Draw the dragged child under the finger.
+     */
+    void draw(Canvas canvas) {
+        if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, mX - mGrabX, mY - mGrabY, mPaint);
+        }
+    }
+}
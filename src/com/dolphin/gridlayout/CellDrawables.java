@@ -0,0 +1,259 @@
+package com.dolphin.gridlayout;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Drawables a {@link DolphinGridLayout} draws in its cells itself, for image
+ * tiles that need no View of their own. Each drawable is center-cropped to
+ * its cells: the crop only scales and centers, so it is kept as the bounds
+ * of the drawable, computed when the grid lines change and clipped to the
+ * cells when drawn. Frames in between do no maths.
+ *
+ * @author dolphinWang
+ */
+class CellDrawables {
+
+    private final DolphinGridLayout mGrid;
+
+    /**
+     * Drawables in drawing order, their requested cells, packed like the
+     * params of {@link GridLayoutSolver}, and their cell rects.
+     */
+    private Drawable[] mDrawables = new Drawable[8];
+    private float[] mCellParams = new float[8 * 4];
+    private int[] mRects = new int[8 * GridLayoutEngine.RECT_STRIDE];
+    private int mCount;
+
+    private final int[] mCell = new int[GridLayoutEngine.CELL_STRIDE];
+    private boolean mBoundsDirty = true;
+
+    CellDrawables(DolphinGridLayout grid) {
+        mGrid = grid;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    Drawable get(int index) {
+        checkIndex(index);
+        return mDrawables[index];
+    }
+
+    int add(Drawable drawable, float rowIndex, float rowSpec,
+            float columnIndex, float columnSpec) {
+        final int index = mCount++;
+        ensureCapacity(mCount);
+
+        final int p = index * 4;
+        mCellParams[p] = rowIndex;
+        mCellParams[p + 1] = rowSpec;
+        mCellParams[p + 2] = columnIndex;
+        mCellParams[p + 3] = columnSpec;
+        mDrawables[index] = drawable;
+        attach(drawable);
+
+        mBoundsDirty = true;
+        return index;
+    }
+
+    void set(int index, Drawable drawable) {
+        checkIndex(index);
+        final Drawable old = mDrawables[index];
+        if (old == drawable) {
+            return;
+        }
+
+        detach(old);
+        mDrawables[index] = drawable;
+        attach(drawable);
+        mBoundsDirty = true;
+    }
+
+    void remove(int index) {
+        checkIndex(index);
+        detach(mDrawables[index]);
+
+        final int moved = --mCount - index;
+        System.arraycopy(mDrawables, index + 1, mDrawables, index, moved);
+        System.arraycopy(mCellParams, (index + 1) * 4, mCellParams,
+                index * 4, moved * 4);
+        System.arraycopy(mRects, (index + 1) * GridLayoutEngine.RECT_STRIDE,
+                mRects, index * GridLayoutEngine.RECT_STRIDE, moved
+                        * GridLayoutEngine.RECT_STRIDE);
+        mDrawables[mCount] = null;
+        mBoundsDirty = true;
+    }
+
+    void clear() {
+        for (int i = 0; i < mCount; i++) {
+            detach(mDrawables[i]);
+            mDrawables[i] = null;
+        }
+        mCount = 0;
+    }
+
+    boolean contains(Drawable drawable) {
+        for (int i = 0; i < mCount; i++) {
+            if (mDrawables[i] == drawable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The grid lines changed, crop again before the next frame.
+     */
+    void invalidateBounds() {
+        mBoundsDirty = true;
+    }
+
+    /**
+     * @return the index of the topmost drawable whose cells hold the point,
+     *         in content coordinates, or -1
+     */
+    int indexAt(int x, int y) {
+        if (mBoundsDirty) {
+            updateBounds();
+        }
+
+        for (int i = mCount - 1; i >= 0; i--) {
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            if (x >= mRects[r] && x < mRects[r + 2] && y >= mRects[r + 1]
+                    && y < mRects[r + 3]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void draw(Canvas canvas) {
+        if (mBoundsDirty) {
+            updateBounds();
+        }
+
+        final int[] rects = mRects;
+        for (int i = 0; i < mCount; i++) {
+            final Drawable drawable = mDrawables[i];
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            if (drawable == null || rects[r] >= rects[r + 2]
+                    || rects[r + 1] >= rects[r + 3]) {
+                continue;
+            }
+
+            final Rect bounds = drawable.getBounds();
+            if (bounds.left >= rects[r] && bounds.top >= rects[r + 1]
+                    && bounds.right <= rects[r + 2]
+                    && bounds.bottom <= rects[r + 3]) {
+                drawable.draw(canvas);
+                continue;
+            }
+
+            final int saveCount = canvas.save();
+            canvas.clipRect(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]);
+            drawable.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * Resolve every cell against the current grid lines and crop the
+     * drawables to them.
+     */
+    private void updateBounds() {
+        mBoundsDirty = false;
+
+        final GridLayoutEngine engine = mGrid.getEngine();
+        final int[] cell = mCell;
+        for (int i = 0; i < mCount; i++) {
+            final int p = i * 4;
+            cell[GridLayoutEngine.CELL_ROW_INDEX] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p]);
+            cell[GridLayoutEngine.CELL_ROW_SPEC] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p + 1]);
+            cell[GridLayoutEngine.CELL_COLUMN_INDEX] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p + 2]);
+            cell[GridLayoutEngine.CELL_COLUMN_SPEC] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p + 3]);
+            engine.clampCell(cell, 0);
+
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            engine.getCellRect(cell, 0, mRects, r);
+            if (mDrawables[i] != null) {
+                centerCrop(mDrawables[i], mRects, r);
+            }
+        }
+    }
+
+    /**
+     * Same as the centerCrop scale type of ImageView: scale to cover the
+     * rect keeping the aspect, centered.
+     */
+    private static void centerCrop(Drawable drawable, int[] rects, int r) {
+        final int left = rects[r];
+        final int top = rects[r + 1];
+        final int width = rects[r + 2] - left;
+        final int height = rects[r + 3] - top;
+        final int intrinsicWidth = drawable.getIntrinsicWidth();
+        final int intrinsicHeight = drawable.getIntrinsicHeight();
+        if (intrinsicWidth <= 0 || intrinsicHeight <= 0) {
+            // Colors and shapes just fill the cells
+            drawable.setBounds(left, top, left + width, top + height);
+            return;
+        }
+
+        int cropWidth = width;
+        int cropHeight = height;
+        if ((long) intrinsicWidth * height > (long) width * intrinsicHeight) {
+            cropWidth = (int) ((long) intrinsicWidth * height / intrinsicHeight);
+        } else {
+            cropHeight = (int) ((long) intrinsicHeight * width / intrinsicWidth);
+        }
+
+        final int cropLeft = left + (width - cropWidth) / 2;
+        final int cropTop = top + (height - cropHeight) / 2;
+        drawable.setBounds(cropLeft, cropTop, cropLeft + cropWidth, cropTop
+                + cropHeight);
+    }
+
+    private void attach(Drawable drawable) {
+        if (drawable != null) {
+            drawable.setCallback(mGrid);
+        }
+    }
+
+    private void detach(Drawable drawable) {
+        if (drawable != null) {
+            drawable.setCallback(null);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Drawable cell " + index
+                    + " of " + mCount + ".");
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (mDrawables.length >= count) {
+            return;
+        }
+
+        final int size = Math.max(count, mDrawables.length * 2);
+        final Drawable[] drawables = new Drawable[size];
+        System.arraycopy(mDrawables, 0, drawables, 0, mDrawables.length);
+        mDrawables = drawables;
+
+        final float[] cellParams = new float[size * 4];
+        System.arraycopy(mCellParams, 0, cellParams, 0, mCellParams.length);
+        mCellParams = cellParams;
+
+        final int[] rects = new int[size * GridLayoutEngine.RECT_STRIDE];
+        System.arraycopy(mRects, 0, rects, 0, mRects.length);
+        mRects = rects;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dolphin.gridlayout;
+
+/**
+ * Normalized cell of one child: indexes and spans in the fixed point of
+ * {@link GridLayoutEngine#CELL_ONE}, already clamped to the grid. Built once
+ * when the child's params change, then only read by measure and layout.
+ *
+ * @author dolphinWang
+ */
+public final class CellSpec {
+
+    public final int rowIndex;
+    public final int rowSpec;
+    public final int columnIndex;
+    public final int columnSpec;
+
+    /**
+     * Tracks this cell touches, cached for dirty tracking.
+     */
+    private final int mFirstRow;
+    private final int mEndRow;
+    private final int mFirstColumn;
+    private final int mEndColumn;
+
+    public CellSpec(int rowIndex, int rowSpec, int columnIndex, int columnSpec) {
+        this.rowIndex = rowIndex;
+        this.rowSpec = rowSpec;
+        this.columnIndex = columnIndex;
+        this.columnSpec = columnSpec;
+
+        mFirstRow = GridLayoutEngine.firstTrack(rowIndex);
+        mEndRow = GridLayoutEngine.endTrack(rowIndex, rowSpec);
+        mFirstColumn = GridLayoutEngine.firstTrack(columnIndex);
+        mEndColumn = GridLayoutEngine.endTrack(columnIndex, columnSpec);
+    }
+
+    /**
+     * Read a cell from a packed engine cell spec.
+     */
+    public static CellSpec from(int[] cells, int offset) {
+        return new CellSpec(cells[offset + GridLayoutEngine.CELL_ROW_INDEX],
+                cells[offset + GridLayoutEngine.CELL_ROW_SPEC],
+                cells[offset + GridLayoutEngine.CELL_COLUMN_INDEX],
+                cells[offset + GridLayoutEngine.CELL_COLUMN_SPEC]);
+    }
+
+    /**
+     * Copy this cell into a packed engine cell spec.
+     */
+    public void writeTo(int[] cells, int offset) {
+        cells[offset + GridLayoutEngine.CELL_ROW_INDEX] = rowIndex;
+        cells[offset + GridLayoutEngine.CELL_ROW_SPEC] = rowSpec;
+        cells[offset + GridLayoutEngine.CELL_COLUMN_INDEX] = columnIndex;
+        cells[offset + GridLayoutEngine.CELL_COLUMN_SPEC] = columnSpec;
+    }
+
+    public int getFirstRow() {
+        return mFirstRow;
+    }
+
+    /**
+     * @return one past the last row this cell touches
+     */
+    public int getEndRow() {
+        return mEndRow;
+    }
+
+    public int getFirstColumn() {
+        return mFirstColumn;
+    }
+
+    /**
+     * @return one past the last column this cell touches
+     */
+    public int getEndColumn() {
+        return mEndColumn;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CellSpec)) {
+            return false;
+        }
+
+        final CellSpec other = (CellSpec) o;
+        return rowIndex == other.rowIndex && rowSpec == other.rowSpec
+                && columnIndex == other.columnIndex
+                && columnSpec == other.columnSpec;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = rowIndex;
+        result = 31 * result + rowSpec;
+        result = 31 * result + columnIndex;
+        result = 31 * result + columnSpec;
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CellSpec{row " + GridLayoutEngine.fromCellFixed(rowIndex)
+                + " x " + GridLayoutEngine.fromCellFixed(rowSpec)
+                + ", column " + GridLayoutEngine.fromCellFixed(columnIndex)
+                + " x " + GridLayoutEngine.fromCellFixed(columnSpec) + "}";
+    }
+}
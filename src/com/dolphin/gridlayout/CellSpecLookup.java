@@ -0,0 +1,17 @@
+package com.dolphin.gridlayout;
+
+/**
+ * Tells which cells an adapter item covers, for
+ * {@link DolphinGridView#setAdapter(android.widget.ListAdapter, CellSpecLookup)}
+ * and {@link DolphinGridLayout#bindCells}. Pure Java like
+ * {@link GridLayoutEngine}.
+ *
+ * @author dolphinWang
+ */
+public interface CellSpecLookup {
+    /**
+     * Fill outCell with rowIndex, rowSpec, columnIndex and columnSpec at
+     * the {@link GridLayoutEngine} CELL_* offsets.
+     */
+    void getCellSpec(int position, int[] outCell);
+}
@@ -0,0 +1,198 @@
+package com.dolphin.gridlayout;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Moves children of a {@link DolphinGridLayout} from their old bounds to new
+ * ones. Start and end rects are taken once per layout pass, then one
+ * runnable posted on the animation timer lays every moving child out at its
+ * interpolated bounds, so no frame asks for measure or layout of the grid.
+ *
+ * @author dolphinWang
+ */
+class CellTransition implements Runnable {
+
+    static final long DEFAULT_DURATION = 250;
+
+    private final View mHost;
+
+    private long mDuration = DEFAULT_DURATION;
+    private Interpolator mInterpolator = new DecelerateInterpolator();
+
+    /**
+     * Moving children and their packed from and to rects, same order.
+     */
+    private View[] mChildren = new View[8];
+    private int[] mFrom = new int[8 * GridLayoutEngine.RECT_STRIDE];
+    private int[] mTo = new int[8 * GridLayoutEngine.RECT_STRIDE];
+    private long[] mStartTimes = new long[8];
+    private int mCount;
+
+    private boolean mScheduled;
+
+    CellTransition(View host) {
+        mHost = host;
+    }
+
+    void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    long getDuration() {
+        return mDuration;
+    }
+
+    void setInterpolator(Interpolator interpolator) {
+        mInterpolator = interpolator;
+    }
+
+    boolean isRunning() {
+        return mCount > 0;
+    }
+
+    /**
+     * Start moving a child from where it is now to the given rect. A child
+     * already moving turns towards the new rect from its current bounds.
+     *
+     * @return false if the child is there already, nothing is animated then
+     */
+    boolean animate(View child, DolphinGridLayout.LayoutParams lp, int[] rect) {
+        final int left = child.getLeft();
+        final int top = child.getTop();
+        final int right = child.getRight();
+        final int bottom = child.getBottom();
+        if (left == rect[0] && top == rect[1] && right == rect[2]
+                && bottom == rect[3]) {
+            cancel(lp);
+            return false;
+        }
+
+        int index = lp.mTransitionIndex;
+        if (index < 0) {
+            index = mCount++;
+            ensureCapacity(mCount);
+            mChildren[index] = child;
+            lp.mTransitionIndex = index;
+        }
+
+        final int r = index * GridLayoutEngine.RECT_STRIDE;
+        mFrom[r] = left;
+        mFrom[r + 1] = top;
+        mFrom[r + 2] = right;
+        mFrom[r + 3] = bottom;
+        System.arraycopy(rect, 0, mTo, r, GridLayoutEngine.RECT_STRIDE);
+        mStartTimes[index] = AnimationUtils.currentAnimationTimeMillis();
+
+        if (!mScheduled) {
+            mScheduled = true;
+            ViewCompat.postOnAnimation(mHost, this);
+        }
+        return true;
+    }
+
+    /**
+     * Stop moving a child, it stays where it is.
+     */
+    void cancel(DolphinGridLayout.LayoutParams lp) {
+        final int index = lp.mTransitionIndex;
+        if (index >= 0) {
+            remove(index);
+        }
+    }
+
+    /**
+     * Put every moving child at the end of its way.
+     */
+    void finish() {
+        for (int i = mCount - 1; i >= 0; i--) {
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            mChildren[i].layout(mTo[r], mTo[r + 1], mTo[r + 2], mTo[r + 3]);
+            remove(i);
+        }
+    }
+
+    @Override
+    public void run() {
+        mScheduled = false;
+
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        final int[] from = mFrom;
+        final int[] to = mTo;
+        for (int i = mCount - 1; i >= 0; i--) {
+            final float elapsed = mDuration > 0 ? (float) (now - mStartTimes[i])
+                    / mDuration : 1;
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            if (elapsed >= 1) {
+                mChildren[i].layout(to[r], to[r + 1], to[r + 2], to[r + 3]);
+                remove(i);
+                continue;
+            }
+
+            final float fraction = mInterpolator.getInterpolation(Math
+                    .max(0, elapsed));
+            mChildren[i].layout(step(from[r], to[r], fraction),
+                    step(from[r + 1], to[r + 1], fraction),
+                    step(from[r + 2], to[r + 2], fraction),
+                    step(from[r + 3], to[r + 3], fraction));
+        }
+
+        if (mCount > 0) {
+            mScheduled = true;
+            ViewCompat.postOnAnimation(mHost, this);
+        }
+    }
+
+    private static int step(int from, int to, float fraction) {
+        return from + Math.round((to - from) * fraction);
+    }
+
+    /**
+     * Drop an entry, the last one takes its place.
+     */
+    private void remove(int index) {
+        final View child = mChildren[index];
+        ((DolphinGridLayout.LayoutParams) child.getLayoutParams()).mTransitionIndex = -1;
+
+        final int last = --mCount;
+        if (index != last) {
+            final View moved = mChildren[last];
+            mChildren[index] = moved;
+            System.arraycopy(mFrom, last * GridLayoutEngine.RECT_STRIDE, mFrom,
+                    index * GridLayoutEngine.RECT_STRIDE,
+                    GridLayoutEngine.RECT_STRIDE);
+            System.arraycopy(mTo, last * GridLayoutEngine.RECT_STRIDE, mTo,
+                    index * GridLayoutEngine.RECT_STRIDE,
+                    GridLayoutEngine.RECT_STRIDE);
+            mStartTimes[index] = mStartTimes[last];
+            ((DolphinGridLayout.LayoutParams) moved.getLayoutParams()).mTransitionIndex = index;
+        }
+        mChildren[last] = null;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mChildren.length >= count) {
+            return;
+        }
+
+        final int size = Math.max(count, mChildren.length * 2);
+        final View[] children = new View[size];
+        System.arraycopy(mChildren, 0, children, 0, mCount - 1);
+        mChildren = children;
+
+        final int[] from = new int[size * GridLayoutEngine.RECT_STRIDE];
+        System.arraycopy(mFrom, 0, from, 0, mFrom.length);
+        mFrom = from;
+
+        final int[] to = new int[size * GridLayoutEngine.RECT_STRIDE];
+        System.arraycopy(mTo, 0, to, 0, mTo.length);
+        mTo = to;
+
+        final long[] startTimes = new long[size];
+        System.arraycopy(mStartTimes, 0, startTimes, 0, mStartTimes.length);
+        mStartTimes = startTimes;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dolphin.gridlayout;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Scrap views of adapter-backed grids, kept apart by view type so a cell
+ * is only ever rebound to a view of its own type. One pool may be shared by
+ * several grids, see {@link DolphinGridView#setCellViewPool(CellViewPool)}
+ * and {@link DolphinGridLayout#bindCells}.
+ *
+ * @author dolphinWang
+ */
+public class CellViewPool {
+
+    private static final int DEFAULT_MAX_SCRAP = 8;
+
+    private final SparseArray<ArrayList<View>> mScrapViews =
+            new SparseArray<ArrayList<View>>();
+
+    private final SparseIntArray mMaxScrap = new SparseIntArray();
+
+    /**
+     * Limit how many scrap views of a type are kept. Extra ones are dropped.
+     */
+    public void setMaxScrapViews(int viewType, int max) {
+        mMaxScrap.put(viewType, max);
+
+        final ArrayList<View> scrap = mScrapViews.get(viewType);
+        while (scrap != null && scrap.size() > max) {
+            scrap.remove(scrap.size() - 1);
+        }
+    }
+
+    /**
+     * @return a scrap view of the given type, or null if there is none
+     */
+    public View getScrapView(int viewType) {
+        final ArrayList<View> scrap = mScrapViews.get(viewType);
+        if (scrap == null || scrap.isEmpty()) {
+            return null;
+        }
+
+        return scrap.remove(scrap.size() - 1);
+    }
+
+    /**
+     * Keep a view that just left its grid, unless the pool of its type is
+     * full.
+     */
+    public void putScrapView(int viewType, View scrap) {
+        ArrayList<View> views = mScrapViews.get(viewType);
+        if (views == null) {
+            views = new ArrayList<View>();
+            mScrapViews.put(viewType, views);
+        }
+
+        if (views.size() < getMaxScrapViews(viewType)) {
+            views.add(scrap);
+        }
+    }
+
+    public int getScrapCount(int viewType) {
+        final ArrayList<View> scrap = mScrapViews.get(viewType);
+        return scrap == null ? 0 : scrap.size();
+    }
+
+    public void clear() {
+        for (int i = 0; i < mScrapViews.size(); i++) {
+            mScrapViews.valueAt(i).clear();
+        }
+    }
+
+    private int getMaxScrapViews(int viewType) {
+        return mMaxScrap.get(viewType, DEFAULT_MAX_SCRAP);
+    }
+}
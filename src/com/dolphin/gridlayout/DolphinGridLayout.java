@@ -3,12 +3,29 @@ package com.dolphin.gridlayout;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.graphics.Rect;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.Gravity;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.Interpolator;
+import android.widget.Adapter;
+import android.widget.ListAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
 
 /**
  * 2014/04/14
@@ -21,21 +38,261 @@ public class DolphinGridLayout extends ViewGroup {
     private static final int DEFAULT_ROW_AND_COLUMN_COUNT = 1;
 
     /**
-     * Count of rows
+     * Children keep the cells they ask for, a missing index means 0.
+     */
+    public static final int AUTO_FLOW_NONE = 0;
+
+    /**
+     * Children missing rowIndex or columnIndex fill the free cells row after
+     * row.
+     */
+    public static final int AUTO_FLOW_ROW = GridOccupancy.FLOW_ROW;
+
+    /**
+     * Children missing rowIndex or columnIndex fill the free cells column
+     * after column.
+     */
+    public static final int AUTO_FLOW_COLUMN = GridOccupancy.FLOW_COLUMN;
+
+    /**
+     * Combined with {@link #AUTO_FLOW_ROW} or {@link #AUTO_FLOW_COLUMN}: fill
+     * holes left behind by bigger children too.
+     */
+    public static final int AUTO_FLOW_DENSE = GridOccupancy.FLOW_DENSE;
+
+    /**
+     * Child larger than its cells is scaled down to fit, keeping its aspect.
+     */
+    public static final int SCALE_FIT = GridLayoutEngine.SCALE_FIT;
+
+    /**
+     * Child takes exactly the size of its cells.
+     */
+    public static final int SCALE_FILL = GridLayoutEngine.SCALE_FILL;
+
+    /**
+     * Child keeps its size, clipped to its cells.
+     */
+    public static final int SCALE_CLIP = GridLayoutEngine.SCALE_CLIP;
+
+    /**
+     * Child keeps its size and may draw over its neighbours.
+     */
+    public static final int SCALE_NONE = GridLayoutEngine.SCALE_NONE;
+
+    /**
+     * Track shares the space left by the others, in proportion to its weight.
+     */
+    public static final int TRACK_WEIGHT = GridLayoutEngine.TRACK_WEIGHT;
+
+    /**
+     * Track has a fixed size in px.
+     */
+    public static final int TRACK_FIXED = GridLayoutEngine.TRACK_FIXED;
+
+    /**
+     * Track is as big as the children on it need.
+     */
+    public static final int TRACK_WRAP = GridLayoutEngine.TRACK_WRAP;
+
+    /**
+     * All the grid maths lives here, this class only feeds it children.
+     */
+    private final GridLayoutEngine mEngine = new GridLayoutEngine();
+
+    /**
+     * Scratch buffers handed to the engine, one child at a time.
+     */
+    private final int[] mCell = new int[GridLayoutEngine.CELL_STRIDE];
+    private final int[] mChildSize = new int[GridLayoutEngine.SIZE_STRIDE];
+    private final int[] mChildRect = new int[GridLayoutEngine.RECT_STRIDE];
+
+    /**
+     * Cells and intrinsic sizes of all children, packed for the track solver.
+     */
+    private int[] mIntrinsicCells = new int[0];
+    private int[] mIntrinsicSizes = new int[0];
+
+    /**
+     * Rows and columns whose children need to be positioned again on the
+     * next layout. When {@link #mAllTracksDirty} is set every child does.
+     */
+    private final BitSet mDirtyRows = new BitSet();
+    private final BitSet mDirtyColumns = new BitSet();
+    private boolean mAllTracksDirty = true;
+
+    /**
+     * Cells taken by the children, rebuilt only when one of them is added,
+     * removed or gets new params.
+     */
+    private final GridOccupancy mOccupancy = new GridOccupancy();
+    private final int[] mPlacement = new int[2];
+    private int mAutoFlow = AUTO_FLOW_NONE;
+    private boolean mPlacementDirty = true;
+    private OnCellOverlapListener mOnCellOverlapListener;
+
+    /**
+     * Index of the topmost child on each whole cell, -1 for none, over the
+     * rows from {@link #mCellIndexFirstRow}. Rebuilt on the first query after
+     * children moved.
+     */
+    private int[] mCellIndex = new int[0];
+    private int mCellIndexFirstRow;
+    private int mCellIndexRowCount;
+    private int mCellIndexColumnCount;
+    private boolean mCellIndexDirty = true;
+
+    /**
+     * Whether a child asked us not to intercept the current gesture.
+     */
+    private boolean mDisallowIntercept;
+
+    private final int[] mChildSpecs = new int[2];
+
+    /**
+     * Counters and timings of the passes, null while not recorded.
+     */
+    private GridMetrics mMetrics;
+
+    /**
+     * Whether this grid takes its tracks from the cells it has in a parent
+     * grid, whether it holds such tracks now, and the tracks as last handed
+     * down. Its own counts and spaces are kept to be put back when it stops
+     * being a subgrid.
+     */
+    private boolean mSubgrid;
+    private boolean mSharingTracks;
+    private int[] mSharedColumnSizes = new int[0];
+    private int[] mSharedRowSizes = new int[0];
+    private int mOwnRowCount;
+    private int mOwnColumnCount;
+    private int mOwnHorizontalSpace;
+    private int mOwnVerticalSpace;
+
+    /**
+     * Pattern whose shared layout is applied instead of solving, null if
+     * none.
+     */
+    private GridPattern mPattern;
+
+    /**
+     * Image tiles drawn by the grid itself, null until the first one is
+     * added.
+     */
+    private CellDrawables mDrawableCells;
+
+    /**
+     * Depth of nested {@link #beginUpdate()} calls, and what was asked for
+     * meanwhile to be done once by the last {@link #endUpdate()}.
+     */
+    private int mUpdateDepth;
+    private boolean mUpdateNeedsResolve;
+    private boolean mUpdateNeedsLayout;
+    private boolean mUpdateNeedsInvalidate;
+
+    private final PassThroughHierarchyChangeListener mPassThroughListener =
+            new PassThroughHierarchyChangeListener();
+
+    /**
+     * Animates children to their new cells, null while transitions are off.
+     */
+    private CellTransition mTransition;
+
+    /**
+     * Long-press drag of children, null while dragging is off.
+     */
+    private CellDragHelper mDrag;
+    private OnCellDragListener mOnCellDragListener;
+
+    /**
+     * Children other than the dragged one, in cell order from the start of
+     * the drag.
+     */
+    private View[] mDragOrder = new View[0];
+    private int mDragOrderCount;
+
+    /**
+     * Snapshot to apply on the next measure instead of solving, then the one
+     * applied until its layout pass is done.
+     */
+    private GridSnapshot mPendingSnapshot;
+    private GridSnapshot mAppliedSnapshot;
+
+    /**
+     * Whether the pending snapshot comes from a {@link GridLayoutSolver}, it
+     * is trusted then and not checked by a pass of its own.
+     */
+    private boolean mPendingSnapshotSolved;
+
+    /**
+     * Bumped by every async solve, so only the newest result is applied.
+     */
+    private int mSolveGeneration;
+
+    /**
+     * Where snapshots are kept between launches, null if only in the saved
+     * instance state.
      */
-    private int mRowCount = DEFAULT_ROW_AND_COLUMN_COUNT;
+    private GridSnapshotFile mSnapshotFile;
 
     /**
-     * Count of columns
+     * Whether a pass solved the grid yet, and the measure specs of the last
+     * one that did. Any spec is a valid one, even 0.
      */
-    private int mColumnCount = DEFAULT_ROW_AND_COLUMN_COUNT;
+    private boolean mSolved;
+    private int mSolvedWidthSpec;
+    private int mSolvedHeightSpec;
+
+    private final Runnable mVerifySnapshot = new Runnable() {
+        @Override
+        public void run() {
+            // A regular pass corrects anything the snapshot got wrong
+            requestLayout();
+        }
+    };
 
-    private Rect mPadding;
-    private int mItemSpaceHorizontal;
-    private int mItemSpaceVertical;
+    private final Runnable mWriteSnapshot = new Runnable() {
+        @Override
+        public void run() {
+            writeSnapshotFile();
+        }
+    };
+
+    private final GridSnapshotFile.Listener mSnapshotFileListener =
+            new GridSnapshotFile.Listener() {
+                @Override
+                public void onSnapshotFileLoaded(GridSnapshotFile file) {
+                    if (file != mSnapshotFile) {
+                        // Another file was set since
+                        return;
+                    }
+                    if (file.hasLoadedSnapshot()) {
+                        // Taken by the next measure, unless one solves first
+                        requestLayout();
+                    } else {
+                        scheduleSnapshotFileWrite();
+                    }
+                }
 
-    private int mColumnWith;
-    private int mRowHeight;
+                @Override
+                public void onSnapshotFileWriteFailed(GridSnapshotFile file,
+                        IOException e) {
+                    Log.w(DEBUG_TAG, "Can not write layout snapshot.", e);
+                }
+            };
+
+    private static final Comparator<View> CELL_ORDER = new Comparator<View>() {
+        @Override
+        public int compare(View lhs, View rhs) {
+            final CellSpec l = ((LayoutParams) lhs.getLayoutParams()).mCellSpec;
+            final CellSpec r = ((LayoutParams) rhs.getLayoutParams()).mCellSpec;
+            if (l.rowIndex != r.rowIndex) {
+                return l.rowIndex < r.rowIndex ? -1 : 1;
+            }
+            return l.columnIndex < r.columnIndex ? -1
+                    : (l.columnIndex == r.columnIndex ? 0 : 1);
+        }
+    };
 
     public DolphinGridLayout(Context context) {
         this(context, null);
@@ -44,375 +301,1861 @@ public class DolphinGridLayout extends ViewGroup {
     public DolphinGridLayout(Context context, AttributeSet attrs) {
         super(context, attrs);
 
-        init();
+        super.setOnHierarchyChangeListener(mPassThroughListener);
 
         if (attrs != null) {
             TypedArray a = context.obtainStyledAttributes(attrs,
                     R.styleable.DolphinGridLayout);
-            mRowCount = a.getInt(R.styleable.DolphinGridLayout_rowCount,
-                    DEFAULT_ROW_AND_COLUMN_COUNT);
+            mEngine.setRowCount(a.getInt(R.styleable.DolphinGridLayout_rowCount,
+                    DEFAULT_ROW_AND_COLUMN_COUNT));
+
+            mEngine.setColumnCount(a.getInt(
+                    R.styleable.DolphinGridLayout_columnCount,
+                    DEFAULT_ROW_AND_COLUMN_COUNT));
+
+            mEngine.setItemHorizontalSpace((int) a.getDimension(
+                    R.styleable.DolphinGridLayout_itemSpaceHorizontal, 0));
+            mEngine.setItemVerticalSpace((int) a.getDimension(
+                    R.styleable.DolphinGridLayout_itemSpaceVertical, 0));
+
+            mAutoFlow = a.getInt(R.styleable.DolphinGridLayout_autoFlow,
+                    AUTO_FLOW_NONE);
+
+            parseTracks(a.getString(R.styleable.DolphinGridLayout_columnSizes),
+                    false);
+            parseTracks(a.getString(R.styleable.DolphinGridLayout_rowSizes),
+                    true);
+
+            // Through the setter, so subclasses refusing it see it too
+            setSubgrid(a.getBoolean(R.styleable.DolphinGridLayout_subgrid,
+                    false));
+
+            a.recycle();
+        }
+
+    }
+
+    /**
+     * @return the engine this layout delegates its maths to
+     */
+    public GridLayoutEngine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Lay the children out as the tiles of a pattern, child i in cell i of
+     * the pattern. The setup of the pattern replaces the counts, spaces and
+     * tracks of this grid, and its layout, solved once for all the grids
+     * showing it, is applied with one exact measure and one layout per child
+     * and no solving. Children that do not match the pattern, by count or
+     * cells, get a regular pass, and so do measure specs under which the
+     * tracks depend on content, e.g. an UNSPECIFIED height. Null goes back
+     * to solving every pass.
+     */
+    public void setPattern(GridPattern pattern) {
+        if (mPattern == pattern) {
+            return;
+        }
+
+        mPattern = pattern;
+        if (pattern != null) {
+            mEngine.setConfig(pattern.getEngine());
+            markAllTracksDirty();
+            mPlacementDirty = true;
+
+            final int[] cell = mCell;
+            final int count = Math.min(getChildCount(), pattern.getCount());
+            for (int i = 0; i < count; i++) {
+                final LayoutParams lp = (LayoutParams) getChildAt(i)
+                        .getLayoutParams();
+                pattern.getCellSpec(i, cell);
+                lp.rowIndex = cell[GridLayoutEngine.CELL_ROW_INDEX];
+                lp.rowSpec = cell[GridLayoutEngine.CELL_ROW_SPEC];
+                lp.columnIndex = cell[GridLayoutEngine.CELL_COLUMN_INDEX];
+                lp.columnSpec = cell[GridLayoutEngine.CELL_COLUMN_SPEC];
+            }
+            resolveAllCellSpecsOrDefer();
+        }
+        requestLayout();
+    }
+
+    /**
+     * Same as {@link #setPattern(GridPattern)} with a registered pattern.
+     */
+    public void setPattern(String name) {
+        final GridPattern pattern = GridPattern.get(name);
+        if (pattern == null) {
+            throw new IllegalArgumentException("No pattern named " + name
+                    + " registered.");
+        }
+        setPattern(pattern);
+    }
+
+    public GridPattern getPattern() {
+        return mPattern;
+    }
+
+    /**
+     * Replace the children with one view per item of cells, in the cells
+     * lookup gives, or one per cell row by row without one. Children bound
+     * before go back to pool and new ones come from it by view type, so
+     * grids sharing a pool, e.g. the rows of a list with different tile
+     * patterns, reuse each other's views instead of inflating new ones.
+     * Grids sharing a pool must agree on what each view type is.
+     * <p>
+     * Changes are applied as one batch, see {@link #beginUpdate()}.
+     */
+    public void bindCells(ListAdapter cells, CellSpecLookup lookup,
+            CellViewPool pool) {
+        beginUpdate();
+        try {
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final View child = getChildAt(i);
+                final int viewType = ((LayoutParams) child.getLayoutParams()).viewType;
+                removeViewAt(i);
+                if (viewType != Adapter.IGNORE_ITEM_VIEW_TYPE) {
+                    pool.putScrapView(viewType, child);
+                }
+            }
+
+            final int count = cells == null ? 0 : cells.getCount();
+            final int columnCount = mEngine.getColumnCount();
+            final int[] cell = mCell;
+            for (int position = 0; position < count; position++) {
+                if (lookup != null) {
+                    lookup.getCellSpec(position, cell);
+                } else {
+                    cell[GridLayoutEngine.CELL_ROW_INDEX] = position / columnCount;
+                    cell[GridLayoutEngine.CELL_ROW_SPEC] = 1;
+                    cell[GridLayoutEngine.CELL_COLUMN_INDEX] = position % columnCount;
+                    cell[GridLayoutEngine.CELL_COLUMN_SPEC] = 1;
+                }
+
+                final int viewType = cells.getItemViewType(position);
+                final View scrap = viewType == Adapter.IGNORE_ITEM_VIEW_TYPE ? null
+                        : pool.getScrapView(viewType);
+                final View child = cells.getView(position, scrap, this);
+                if (scrap != null && scrap != child) {
+                    pool.putScrapView(viewType, scrap);
+                }
+
+                final ViewGroup.LayoutParams params = child.getLayoutParams();
+                final LayoutParams lp;
+                if (params == null) {
+                    lp = generateDefaultLayoutParams();
+                } else if (!checkLayoutParams(params)) {
+                    lp = generateLayoutParams(params);
+                } else {
+                    lp = (LayoutParams) params;
+                }
+                lp.rowIndex = cell[GridLayoutEngine.CELL_ROW_INDEX];
+                lp.rowSpec = cell[GridLayoutEngine.CELL_ROW_SPEC];
+                lp.columnIndex = cell[GridLayoutEngine.CELL_COLUMN_INDEX];
+                lp.columnSpec = cell[GridLayoutEngine.CELL_COLUMN_SPEC];
+                lp.viewType = viewType;
+                addView(child, lp);
+            }
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Start a batch of changes: until the matching {@link #endUpdate()},
+     * params are not normalized and the grid neither requests layout nor
+     * invalidates, so any number of setter calls, added views and edited
+     * params cost one measure and one layout. Calls may nest.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * End a batch started by {@link #beginUpdate()}. The outermost call
+     * normalizes the params of every child once and requests the one layout
+     * pass the batch asked for, if any.
+     */
+    public void endUpdate() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException(
+                    "endUpdate() without a matching beginUpdate().");
+        }
+        if (--mUpdateDepth > 0) {
+            return;
+        }
+
+        if (mUpdateNeedsResolve) {
+            mUpdateNeedsResolve = false;
+            resolveAllCellSpecs();
+        }
+        if (mUpdateNeedsLayout) {
+            mUpdateNeedsLayout = false;
+            mUpdateNeedsInvalidate = false;
+            super.requestLayout();
+        }
+        if (mUpdateNeedsInvalidate) {
+            mUpdateNeedsInvalidate = false;
+            super.invalidate();
+        }
+    }
+
+    /**
+     * Run changes as one batch, see {@link #beginUpdate()}.
+     */
+    public void update(Runnable changes) {
+        beginUpdate();
+        try {
+            changes.run();
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * @return true between {@link #beginUpdate()} and {@link #endUpdate()}
+     */
+    public boolean isUpdating() {
+        return mUpdateDepth > 0;
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mUpdateDepth > 0) {
+            // Children asking for layout end up here too
+            mUpdateNeedsLayout = true;
+            if (mMetrics != null) {
+                mMetrics.mLayoutRequestsCoalesced++;
+            }
+            return;
+        }
+        super.requestLayout();
+    }
+
+    @Override
+    public void invalidate() {
+        if (mUpdateDepth > 0) {
+            mUpdateNeedsInvalidate = true;
+            return;
+        }
+        super.invalidate();
+    }
+
+    /**
+     * Set how children without a rowIndex or columnIndex get their cells.
+     *
+     * @param autoFlow {@link #AUTO_FLOW_NONE}, or {@link #AUTO_FLOW_ROW} or
+     *            {@link #AUTO_FLOW_COLUMN}, optionally with
+     *            {@link #AUTO_FLOW_DENSE}
+     */
+    public void setAutoFlow(int autoFlow) {
+        if (mAutoFlow == autoFlow) {
+            return;
+        }
+
+        mAutoFlow = autoFlow;
+        mPlacementDirty = true;
+        requestLayout();
+    }
+
+    public int getAutoFlow() {
+        return mAutoFlow;
+    }
+
+    /**
+     * Animate children from their old bounds to their new cells whenever a
+     * layout pass moves them, e.g. after {@link #setColumnCount(int)} or a
+     * change of their params. Frames only lay the moving children out, the
+     * grid is measured and laid out once per change.
+     */
+    public void setCellTransitionEnabled(boolean enabled) {
+        if (enabled && mTransition == null) {
+            mTransition = new CellTransition(this);
+        } else if (!enabled && mTransition != null) {
+            mTransition.finish();
+            mTransition = null;
+        }
+    }
+
+    public boolean isCellTransitionEnabled() {
+        return mTransition != null;
+    }
+
+    /**
+     * @param duration how long a child takes to its new cells, in ms
+     */
+    public void setCellTransitionDuration(long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration less than 0.");
+        }
+
+        setCellTransitionEnabled(true);
+        mTransition.setDuration(duration);
+    }
+
+    public void setCellTransitionInterpolator(Interpolator interpolator) {
+        setCellTransitionEnabled(true);
+        mTransition.setInterpolator(interpolator);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        if (mTransition != null) {
+            // Nothing draws the frames anymore
+            mTransition.finish();
+        }
+        if (mDrag != null) {
+            mDrag.stopDrag();
+        }
+    }
+
+    /**
+     * Get told about children placed on cells another child already has.
+     */
+    public void setOnCellOverlapListener(OnCellOverlapListener listener) {
+        mOnCellOverlapListener = listener;
+    }
+
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        // The user's listener is called through ours
+        mPassThroughListener.mOnHierarchyChangeListener = listener;
+    }
+
+    /**
+     * Record counters and timings of the passes of this grid, null to stop.
+     */
+    public void setMetrics(GridMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public GridMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final GridMetrics metrics = mMetrics;
+        if (metrics == null) {
+            measureGrid(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        metrics.beginMeasure();
+        try {
+            measureGrid(widthMeasureSpec, heightMeasureSpec);
+        } finally {
+            metrics.endMeasure(this);
+        }
+    }
+
+    /**
+     * The measure pass itself, timed by {@link #onMeasure} when metrics are
+     * set.
+     */
+    void measureGrid(int widthMeasureSpec, int heightMeasureSpec) {
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+
+        final GridLayoutEngine engine = mEngine;
+        engine.setPadding(getPaddingLeft(), getPaddingTop(),
+                getPaddingRight(), getPaddingBottom());
+
+        if (mSubgrid) {
+            if (mSharingTracks && getParent() instanceof DolphinGridLayout) {
+                measureSharedTracks(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
+            // Not in a grid anymore, it is a grid of its own
+            stopSharingTracks();
+        }
+
+        if (mPendingSnapshot == null && mSnapshotFile != null) {
+            mPendingSnapshot = mSnapshotFile.takeLoadedSnapshot();
+            mPendingSnapshotSolved = false;
+        }
+        if (mPendingSnapshot == null && mPattern != null) {
+            // Null when the tracks need the tiles, a regular pass then
+            mPendingSnapshot = mPattern.getLayout(widthMeasureSpec,
+                    heightMeasureSpec, getPaddingLeft(), getPaddingTop(),
+                    getPaddingRight(), getPaddingBottom());
+            mPendingSnapshotSolved = mPendingSnapshot != null;
+        }
+        if (mPendingSnapshot != null) {
+            final GridSnapshot snapshot = mPendingSnapshot;
+            final boolean solved = mPendingSnapshotSolved;
+            mPendingSnapshot = null;
+            mPendingSnapshotSolved = false;
+            if (applySnapshot(snapshot, widthMeasureSpec, heightMeasureSpec,
+                    !solved)) {
+                if (!solved) {
+                    // Checked once the first frame is out
+                    post(mVerifySnapshot);
+                }
+                return;
+            }
+        }
+        mAppliedSnapshot = null;
+        mSolved = true;
+        mSolvedWidthSpec = widthMeasureSpec;
+        mSolvedHeightSpec = heightMeasureSpec;
+        if (mSnapshotFile != null) {
+            mSnapshotFile.onSolved();
+        }
+
+        // Axes the parent does not fix, or with wrap tracks, need children
+        final boolean widthIntrinsic = engine.getColumnCount() > 0
+                && engine.columnsNeedContent(widthMode);
+        final boolean heightIntrinsic = engine.getRowCount() > 0
+                && engine.rowsNeedContent(heightMode);
+        if (!widthIntrinsic) {
+            engine.resolveColumns(widthSize);
+        }
+        if (!heightIntrinsic) {
+            engine.resolveRows(heightSize);
+        }
+
+        // Params are normalized when they change, this only catches the ones
+        // edited in place since
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            resolveCellSpec((LayoutParams) getChildAt(i).getLayoutParams());
+        }
+
+        if (mPlacementDirty) {
+            placeChildren(childCount);
+        }
+
+        if (widthIntrinsic || heightIntrinsic) {
+            final int entries = measureIntrinsic(this, 0, 0, 0,
+                    widthIntrinsic, widthMode, widthSize - getPaddingLeft()
+                            - getPaddingRight(), heightIntrinsic, heightMode,
+                    heightSize - getPaddingTop() - getPaddingBottom());
+
+            final int[] cells = mIntrinsicCells;
+            final int[] sizes = mIntrinsicSizes;
+            if (widthIntrinsic) {
+                widthSize = engine.solveIntrinsicWidth(entries, cells, sizes,
+                        widthMode, widthSize);
+            }
+            if (heightIntrinsic) {
+                heightSize = engine.solveIntrinsicHeight(entries, cells,
+                        sizes, heightMode, heightSize);
+            }
+        }
+
+        measureChildrenInCells(childCount);
+
+        if (engine.commitTracks()) {
+            // Tracks moved, every child moves with them
+            markAllTracksDirty();
+        }
+
+        setMeasuredDimension(widthSize, heightSize);
+    }
+
+    /**
+     * Measure a subgrid on the tracks its parent handed down: no tracks to
+     * resolve or solve, its children are measured once against them.
+     */
+    private void measureSharedTracks(int widthMeasureSpec,
+            int heightMeasureSpec) {
+        final GridLayoutEngine engine = mEngine;
+        engine.setTrackSizes(mSharedColumnSizes, mSharedRowSizes);
+
+        resolveChildren();
+        measureChildrenInCells(getChildCount());
+
+        if (engine.commitTracks()) {
+            markAllTracksDirty();
+        }
+
+        setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec),
+                MeasureSpec.getSize(heightMeasureSpec));
+    }
+
+    /**
+     * Measure every child in its cells, the tracks must be resolved.
+     */
+    private void measureChildrenInCells(int childCount) {
+        // Measure child, and check whether child need re-measure to meet parent
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+
+            LayoutParams lp = (LayoutParams) child.getLayoutParams();
+
+            if (lp.cellMoved()) {
+                // Both the tracks it left and the ones it moved to
+                markCellDirty(lp.mLaidOutSpec);
+                markCellDirty(lp.mCellSpec);
+            }
+
+            if (measureChildInCell(child, lp)) {
+                // Its size may have changed, so its tracks need a new layout
+                markCellDirty(lp.mCellSpec);
+            }
+        }
+    }
+
+    /**
+     * Measure a child against the size its cells provide, scaling it down if
+     * it does not fit. The engine tracks and the cell spec of lp must be
+     * resolved already.
+     *
+     * @return false if the measure cache answered and the child was not
+     *         measured at all
+     */
+    boolean measureChildInCell(View child, LayoutParams lp) {
+        final GridLayoutEngine engine = mEngine;
+        final CellSpec spec = lp.mCellSpec;
+
+        // Calculate whether need re-measure
+        final int heightProvide = engine.getSpanHeight(spec.rowIndex,
+                spec.rowSpec);
+        final int widthProvide = engine.getSpanWidth(spec.columnIndex,
+                spec.columnSpec);
+
+        final DolphinGridLayout subgrid = asSubgrid(child);
+        if (subgrid != null) {
+            return measureSubgrid(subgrid, lp, widthProvide, heightProvide);
+        }
+
+        // The policy picks specs that make one measure enough when it can
+        final int[] childSpecs = mChildSpecs;
+        GridLayoutEngine.makeChildMeasureSpecs(lp.width, lp.height,
+                widthProvide, heightProvide, lp.scalePolicy, childSpecs, 0);
+        final int widthSpec = childSpecs[0];
+        final int heightSpec = childSpecs[1];
+        final int fingerprint = lp.fingerprint(widthProvide, heightProvide);
+
+        final GridMetrics metrics = mMetrics;
+        if (lp.hitMeasureCache(child, widthSpec, heightSpec, fingerprint)) {
+            // Same question as last pass, the child still holds the answer
+            if (metrics != null) {
+                metrics.mMeasureCacheHits++;
+            }
+            return false;
+        }
+
+        if (!lp.reuseIntrinsicMeasure(child, widthSpec, heightSpec)) {
+            // Unless the intrinsic pass already gave the answer
+            child.measure(widthSpec, heightSpec);
+            if (metrics != null) {
+                metrics.countChildMeasure(false);
+            }
+        } else if (metrics != null) {
+            metrics.mIntrinsicReuses++;
+        }
+
+        final int[] childSize = mChildSize;
+        childSize[0] = child.getMeasuredWidth();
+        childSize[1] = child.getMeasuredHeight();
+
+        if (lp.scalePolicy == SCALE_FIT
+                && GridLayoutEngine.fitToCell(childSize, 0, widthProvide,
+                        heightProvide)) {
+            // The child ignored its specs, re-measure to meet parent provide
+            child.measure(MeasureSpec.makeMeasureSpec(childSize[0],
+                    MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
+                    childSize[1], MeasureSpec.EXACTLY));
+            if (metrics != null) {
+                metrics.countChildMeasure(true);
+            }
+        }
+
+        lp.saveMeasureCache(child, widthSpec, heightSpec, fingerprint);
+        return true;
+    }
+
+    /**
+     * Mark the cells of the children on the occupancy grid, auto-placing the
+     * ones that left an index out, and report children that overlap.
+     */
+    private void placeChildren(int childCount) {
+        final GridOccupancy occupancy = mOccupancy;
+        occupancy.reset(mEngine.getRowCount(), mEngine.getColumnCount());
+
+        // Children with a fixed cell first, auto ones flow around them
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (mAutoFlow != AUTO_FLOW_NONE && lp.isAutoPlaced()) {
+                continue;
+            }
+
+            final CellSpec spec = lp.mCellSpec;
+            if (occupancy.occupy(spec.getFirstRow(), spec.getFirstColumn(),
+                    spec.getEndRow() - spec.getFirstRow(), spec.getEndColumn()
+                            - spec.getFirstColumn())) {
+                dispatchCellOverlap(child);
+            }
+        }
+
+        if (mAutoFlow != AUTO_FLOW_NONE) {
+            final int[] placement = mPlacement;
+            for (int i = 0; i < childCount; i++) {
+                final View child = getChildAt(i);
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                if (!lp.isAutoPlaced()) {
+                    continue;
+                }
+
+                final CellSpec spec = lp.mCellSpec;
+                final int rowSpan = GridLayoutEngine.endTrack(0, spec.rowSpec);
+                final int columnSpan = GridLayoutEngine.endTrack(0,
+                        spec.columnSpec);
+                if (!occupancy.place(lp.rowIndex < 0 ? -1 : spec.getFirstRow(),
+                        lp.columnIndex < 0 ? -1 : spec.getFirstColumn(),
+                        rowSpan, columnSpan, mAutoFlow, placement)) {
+                    // No room left, it stays where normalizing put it
+                    occupancy.occupy(spec.getFirstRow(), spec.getFirstColumn(),
+                            rowSpan, columnSpan);
+                    dispatchCellOverlap(child);
+                    continue;
+                }
+
+                final CellSpec placed = new CellSpec(placement[0]
+                        * GridLayoutEngine.CELL_ONE, spec.rowSpec, placement[1]
+                        * GridLayoutEngine.CELL_ONE, spec.columnSpec);
+                if (!placed.equals(spec)) {
+                    lp.mCellSpec = placed;
+                }
+            }
+        }
+
+        if (occupancy.getOverlapCount() > 0 && mOnCellOverlapListener == null) {
+            Log.w(DEBUG_TAG, occupancy.getOverlapCount()
+                    + " children overlap cells of others.");
+        }
+
+        mPlacementDirty = false;
+    }
+
+    private void dispatchCellOverlap(View child) {
+        if (mOnCellOverlapListener != null) {
+            mOnCellOverlapListener.onCellOverlap(this, child);
+        }
+    }
+
+    /**
+     * Measure every child once for the axes sized to content, and pack cells
+     * and sizes for the track solver. Children whose question did not change
+     * since the last pass are not measured again. The children of subgrids
+     * are packed too, in the cells of this grid they sit on, so they size
+     * its tracks without the subgrids being measured here.
+     *
+     * @param grid this grid, or a subgrid in it
+     * @param rowOffset where the rows of grid start in this grid, fixed point
+     * @param columnOffset where the columns of grid start, fixed point
+     * @param entry first entry to pack
+     * @return the entry after the last one packed
+     */
+    private int measureIntrinsic(DolphinGridLayout grid, int rowOffset,
+            int columnOffset, int entry, boolean widthIntrinsic,
+            int widthMode, int availableWidth, boolean heightIntrinsic,
+            int heightMode, int availableHeight) {
+        final GridLayoutEngine engine = mEngine;
+        final int childCount = grid.getChildCount();
+
+        for (int i = 0; i < childCount; i++) {
+            final View child = grid.getChildAt(i);
+
+            LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final CellSpec spec = lp.mCellSpec;
+
+            final DolphinGridLayout subgrid = asSubgrid(child);
+            if (subgrid != null) {
+                subgrid.shareTracks(grid.mEngine, spec, false);
+                subgrid.resolveChildren();
+                entry = measureIntrinsic(subgrid, rowOffset
+                        + spec.getFirstRow() * GridLayoutEngine.CELL_ONE,
+                        columnOffset + spec.getFirstColumn()
+                                * GridLayoutEngine.CELL_ONE, entry,
+                        widthIntrinsic, widthMode, availableWidth,
+                        heightIntrinsic, heightMode, availableHeight);
+                continue;
+            }
+
+            ensureIntrinsicCapacity(entry + 1);
+            final int c = entry * GridLayoutEngine.CELL_STRIDE;
+            final int[] cells = mIntrinsicCells;
+            spec.writeTo(cells, c);
+            cells[c + GridLayoutEngine.CELL_ROW_INDEX] += rowOffset;
+            cells[c + GridLayoutEngine.CELL_COLUMN_INDEX] += columnOffset;
+
+            final int widthSpec = widthIntrinsic ? GridLayoutEngine
+                    .makeIntrinsicMeasureSpec(lp.width, widthMode,
+                            availableWidth) : GridLayoutEngine
+                    .makeChildMeasureSpec(lp.width, engine.getSpanWidth(
+                            cells[c + GridLayoutEngine.CELL_COLUMN_INDEX],
+                            spec.columnSpec));
+            final int heightSpec = heightIntrinsic ? GridLayoutEngine
+                    .makeIntrinsicMeasureSpec(lp.height, heightMode,
+                            availableHeight) : GridLayoutEngine
+                    .makeChildMeasureSpec(lp.height, engine.getSpanHeight(
+                            cells[c + GridLayoutEngine.CELL_ROW_INDEX],
+                            spec.rowSpec));
+
+            if (!lp.hitIntrinsicCache(child, widthSpec, heightSpec)) {
+                lp.invalidateMeasureCache();
+                child.measure(widthSpec, heightSpec);
+                lp.saveIntrinsicMeasure(child, widthSpec, heightSpec);
+                if (mMetrics != null) {
+                    mMetrics.countIntrinsicMeasure();
+                }
+            } else if (mMetrics != null) {
+                mMetrics.mIntrinsicCacheHits++;
+            }
+
+            mIntrinsicSizes[entry * GridLayoutEngine.SIZE_STRIDE] = lp.mIntrinsicWidth;
+            mIntrinsicSizes[entry * GridLayoutEngine.SIZE_STRIDE + 1] = lp.mIntrinsicHeight;
+            entry++;
+        }
+
+        return entry;
+    }
+
+    private void ensureIntrinsicCapacity(int entries) {
+        if (mIntrinsicCells.length >= entries * GridLayoutEngine.CELL_STRIDE) {
+            return;
+        }
+
+        // Children of subgrids come on top of our own
+        final int size = Math.max(entries * 2, getChildCount());
+        final int[] cells = new int[size * GridLayoutEngine.CELL_STRIDE];
+        System.arraycopy(mIntrinsicCells, 0, cells, 0, mIntrinsicCells.length);
+        mIntrinsicCells = cells;
+        final int[] sizes = new int[size * GridLayoutEngine.SIZE_STRIDE];
+        System.arraycopy(mIntrinsicSizes, 0, sizes, 0, mIntrinsicSizes.length);
+        mIntrinsicSizes = sizes;
+    }
+
+    /**
+     * Make this grid take its rows and columns from the cells it has in a
+     * parent {@link DolphinGridLayout}, like a CSS subgrid: its children line
+     * up with the parent's tracks and size them, and the whole tree is
+     * measured in the parent's single pass, once per child, however deep
+     * subgrids nest. Its rowCount, columnCount and item spaces come from the
+     * parent then, set while it is a subgrid they are overridden; its own
+     * are back once it stops being one. Keep a subgrid without padding for
+     * its lines to meet the parent's.
+     */
+    public void setSubgrid(boolean subgrid) {
+        if (mSubgrid == subgrid) {
+            return;
+        }
+
+        mSubgrid = subgrid;
+        if (!subgrid) {
+            stopSharingTracks();
+        }
+        requestLayout();
+    }
+
+    public boolean isSubgrid() {
+        return mSubgrid;
+    }
+
+    /**
+     * @return child if it is a subgrid, or null
+     */
+    private static DolphinGridLayout asSubgrid(View child) {
+        return child instanceof DolphinGridLayout
+                && ((DolphinGridLayout) child).mSubgrid ? (DolphinGridLayout) child
+                : null;
+    }
+
+    /**
+     * Measure a subgrid to exactly its cells, after handing down the tracks
+     * under them.
+     */
+    private boolean measureSubgrid(DolphinGridLayout subgrid, LayoutParams lp,
+            int widthProvide, int heightProvide) {
+        if (subgrid.shareTracks(mEngine, lp.mCellSpec, true)) {
+            // Maybe the same size, but split differently
+            subgrid.forceLayout();
+        }
+
+        final int widthSpec = MeasureSpec.makeMeasureSpec(widthProvide,
+                MeasureSpec.EXACTLY);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(heightProvide,
+                MeasureSpec.EXACTLY);
+        final int fingerprint = lp.fingerprint(widthProvide, heightProvide);
+        if (lp.hitMeasureCache(subgrid, widthSpec, heightSpec, fingerprint)) {
+            if (mMetrics != null) {
+                mMetrics.mMeasureCacheHits++;
+            }
+            return false;
+        }
+
+        subgrid.measure(widthSpec, heightSpec);
+        if (mMetrics != null) {
+            mMetrics.countChildMeasure(false);
+        }
+        lp.saveMeasureCache(subgrid, widthSpec, heightSpec, fingerprint);
+        return true;
+    }
+
+    /**
+     * Take the counts and spaces of the parent tracks under spec, and their
+     * sizes too if withSizes.
+     *
+     * @return true if anything changed
+     */
+    private boolean shareTracks(GridLayoutEngine parent, CellSpec spec,
+            boolean withSizes) {
+        final GridLayoutEngine engine = mEngine;
+        if (!mSharingTracks) {
+            mSharingTracks = true;
+            mOwnRowCount = engine.getRowCount();
+            mOwnColumnCount = engine.getColumnCount();
+            mOwnHorizontalSpace = engine.getItemHorizontalSpace();
+            mOwnVerticalSpace = engine.getItemVerticalSpace();
+        }
+
+        final int firstRow = spec.getFirstRow();
+        final int rowCount = spec.getEndRow() - firstRow;
+        final int firstColumn = spec.getFirstColumn();
+        final int columnCount = spec.getEndColumn() - firstColumn;
+
+        boolean changed = false;
+        if (engine.getRowCount() != rowCount
+                || engine.getColumnCount() != columnCount
+                || engine.getItemHorizontalSpace() != parent
+                        .getItemHorizontalSpace()
+                || engine.getItemVerticalSpace() != parent
+                        .getItemVerticalSpace()) {
+            engine.setRowCount(rowCount);
+            engine.setColumnCount(columnCount);
+            engine.setItemHorizontalSpace(parent.getItemHorizontalSpace());
+            engine.setItemVerticalSpace(parent.getItemVerticalSpace());
+            changed = true;
+        }
+
+        if (withSizes) {
+            if (mSharedRowSizes.length < rowCount) {
+                mSharedRowSizes = new int[rowCount];
+            }
+            for (int i = 0; i < rowCount; i++) {
+                final int size = parent.getRowHeight(firstRow + i);
+                if (mSharedRowSizes[i] != size) {
+                    mSharedRowSizes[i] = size;
+                    changed = true;
+                }
+            }
+
+            if (mSharedColumnSizes.length < columnCount) {
+                mSharedColumnSizes = new int[columnCount];
+            }
+            for (int i = 0; i < columnCount; i++) {
+                final int size = parent.getColumnWidth(firstColumn + i);
+                if (mSharedColumnSizes[i] != size) {
+                    mSharedColumnSizes[i] = size;
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            markAllTracksDirty();
+        }
+        return changed;
+    }
+
+    private void stopSharingTracks() {
+        if (!mSharingTracks) {
+            return;
+        }
+
+        mSharingTracks = false;
+        final GridLayoutEngine engine = mEngine;
+        engine.setRowCount(mOwnRowCount);
+        engine.setColumnCount(mOwnColumnCount);
+        engine.setItemHorizontalSpace(mOwnHorizontalSpace);
+        engine.setItemVerticalSpace(mOwnVerticalSpace);
+        markAllTracksDirty();
+    }
+
+    /**
+     * Normalize and place the children against the current counts.
+     */
+    private void resolveChildren() {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            resolveCellSpec((LayoutParams) getChildAt(i).getLayoutParams());
+        }
+        if (mPlacementDirty) {
+            placeChildren(childCount);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right,
+            int bottom) {
+        final GridMetrics metrics = mMetrics;
+        if (metrics == null) {
+            layoutGrid();
+            return;
+        }
+
+        metrics.beginLayout();
+        try {
+            layoutGrid();
+        } finally {
+            metrics.endLayout(this);
+        }
+    }
+
+    /**
+     * The layout pass itself, timed by {@link #onLayout} when metrics are
+     * set.
+     */
+    void layoutGrid() {
+        if (mDrawableCells != null) {
+            mDrawableCells.invalidateBounds();
+        }
+
+        final int childCount = getChildCount();
+        if (mAppliedSnapshot != null) {
+            layoutSnapshot(mAppliedSnapshot, childCount);
+            mAppliedSnapshot = null;
+            return;
+        }
+
+        final boolean layoutAll = mAllTracksDirty;
+
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (!layoutAll && lp.mLaidOutSpec != null
+                    && !child.isLayoutRequested() && !isCellDirty(lp.mCellSpec)) {
+                // Nothing it sits on changed, it stays where it is
+                if (mMetrics != null) {
+                    mMetrics.mChildLayoutsSkipped++;
+                }
+                continue;
+            }
+
+            layoutChildInCell(child, lp, mTransition != null);
+            if (mMetrics != null) {
+                mMetrics.mChildLayouts++;
+            }
+        }
+
+        mDirtyRows.clear();
+        mDirtyColumns.clear();
+        mAllTracksDirty = false;
+
+        scheduleSnapshotFileWrite();
+    }
+
+    /**
+     * Keep the solved layout between launches in a file, e.g. under
+     * {@link Context#getCacheDir()}. The file is read on the executor right
+     * away and handed to the main looper, attached or not, so call this
+     * before the grid is first measured, e.g. from onCreate; a snapshot read
+     * in time is used instead of the first solve. The first solved layout is
+     * written back on the executor if it changed.
+     */
+    public void setSnapshotCache(File file, Executor executor) {
+        if (file == null) {
+            mSnapshotFile = null;
+            return;
+        }
+
+        // Not View.post: before attach it waits for the first traversal,
+        // which is too late for the first measure
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mSnapshotFile = new GridSnapshotFile(file, executor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        }, mSnapshotFileListener);
+        if (mSolved) {
+            mSnapshotFile.onSolved();
+        }
+        mSnapshotFile.load();
+    }
+
+    /**
+     * Use a snapshot on the next measure instead of solving the grid, if it
+     * was taken for the same size and config.
+     */
+    public void applySnapshot(GridSnapshot snapshot) {
+        mPendingSnapshot = snapshot;
+        mPendingSnapshotSolved = false;
+        requestLayout();
+    }
+
+    /**
+     * Build a solver with the setup of this grid, to solve items of known
+     * sizes away from the UI thread. See {@link GridLayoutSolver} for the
+     * arrays.
+     */
+    public GridLayoutSolver newLayoutSolver(int count, float[] cellParams,
+            int[] params, int[] desired, int[] gravities) {
+        mEngine.setPadding(getPaddingLeft(), getPaddingTop(),
+                getPaddingRight(), getPaddingBottom());
+        return new GridLayoutSolver(mEngine, mAutoFlow, count, cellParams,
+                params, desired, gravities);
+    }
+
+    /**
+     * Use the result of a solver on the next measure: children are measured
+     * EXACTLY to their solved size and laid out at their solved bounds. It
+     * is dropped if the measure specs or the children's cells differ from
+     * what was solved. Call on the UI thread.
+     */
+    public void applySolvedLayout(GridSnapshot result) {
+        mPendingSnapshot = result;
+        mPendingSnapshotSolved = true;
+        requestLayout();
+    }
+
+    /**
+     * Solve on the executor, then apply the result on the UI thread. The
+     * result of an older call still running is dropped.
+     */
+    public void solveLayoutAsync(final GridLayoutSolver solver,
+            final int widthMeasureSpec, final int heightMeasureSpec,
+            Executor executor) {
+        final int generation = ++mSolveGeneration;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final GridSnapshot result = solver.solve(widthMeasureSpec,
+                        heightMeasureSpec);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mSolveGeneration) {
+                            applySolvedLayout(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the layout of the last solved pass, or null before the first
+     */
+    public GridSnapshot takeSnapshot() {
+        final int childCount = getChildCount();
+        final GridLayoutEngine engine = mEngine;
+        if (!mSolved) {
+            return null;
+        }
+
+        final int[] columnSizes = new int[engine.getColumnCount()];
+        for (int i = 0; i < columnSizes.length; i++) {
+            columnSizes[i] = engine.getColumnWidth(i);
+        }
+        final int[] rowSizes = new int[engine.getRowCount()];
+        for (int i = 0; i < rowSizes.length; i++) {
+            rowSizes[i] = engine.getRowHeight(i);
+        }
+
+        final int[] cells = new int[childCount * GridLayoutEngine.CELL_STRIDE];
+        final int[] rects = new int[childCount * GridLayoutEngine.RECT_STRIDE];
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (lp.mCellSpec == null) {
+                return null;
+            }
+
+            // Where the child ends up, even if a transition still moves it
+            lp.mCellSpec.writeTo(cells, i * GridLayoutEngine.CELL_STRIDE);
+            engine.layoutCell(cells, i * GridLayoutEngine.CELL_STRIDE,
+                    lp.gravity, child.getMeasuredWidth(),
+                    child.getMeasuredHeight(), rects, i
+                            * GridLayoutEngine.RECT_STRIDE);
+        }
+
+        return new GridSnapshot(mSolvedWidthSpec, mSolvedHeightSpec,
+                snapshotConfigKey(), getMeasuredWidth(), getMeasuredHeight(),
+                columnSizes, rowSizes, childCount, cells, rects);
+    }
+
+    /**
+     * Hash of everything besides the measure specs a snapshot depends on:
+     * the engine setup, the device configuration and the params of every
+     * child. Content inside children is not covered, the pass after a
+     * snapshot catches that.
+     */
+    private int snapshotConfigKey() {
+        int result = mEngine.configHashCode();
+        result = 31 * result + mAutoFlow;
+        result = 31 * result + getResources().getConfiguration().hashCode();
+
+        final int childCount = getChildCount();
+        result = 31 * result + childCount;
+        for (int i = 0; i < childCount; i++) {
+            final LayoutParams lp = (LayoutParams) getChildAt(i)
+                    .getLayoutParams();
+            result = 31 * result + lp.width;
+            result = 31 * result + lp.height;
+            result = 31 * result + lp.gravity;
+            result = 31 * result + lp.scalePolicy;
+            result = 31 * result + Float.floatToIntBits(lp.rowIndex);
+            result = 31 * result + Float.floatToIntBits(lp.rowSpec);
+            result = 31 * result + Float.floatToIntBits(lp.columnIndex);
+            result = 31 * result + Float.floatToIntBits(lp.columnSpec);
+        }
+
+        return result;
+    }
+
+    /**
+     * Take tracks and child sizes from a snapshot. Children are still
+     * measured, but only once and EXACTLY to their recorded size.
+     *
+     * @param checkConfig whether the config of the grid and its children
+     *            must match too
+     * @return false if the snapshot does not fit this grid and measure specs
+     */
+    private boolean applySnapshot(GridSnapshot snapshot, int widthSpec,
+            int heightSpec, boolean checkConfig) {
+        final GridLayoutEngine engine = mEngine;
+        final int childCount = getChildCount();
+        if (!snapshot.matches(widthSpec, heightSpec)
+                || (checkConfig && !snapshot.matches(widthSpec, heightSpec,
+                        snapshotConfigKey()))
+                || snapshot.getChildCount() != childCount
+                || snapshot.getColumnSizes().length != engine.getColumnCount()
+                || snapshot.getRowSizes().length != engine.getRowCount()) {
+            return false;
+        }
+
+        for (int i = 0; i < childCount; i++) {
+            resolveCellSpec((LayoutParams) getChildAt(i).getLayoutParams());
+        }
+        if (mPlacementDirty) {
+            placeChildren(childCount);
+        }
+        for (int i = 0; i < childCount; i++) {
+            final LayoutParams lp = (LayoutParams) getChildAt(i)
+                    .getLayoutParams();
+            if (!snapshot.hasCell(i, lp.mCellSpec)) {
+                return false;
+            }
+        }
+
+        engine.setTrackSizes(snapshot.getColumnSizes(), snapshot.getRowSizes());
+
+        final int[] rects = snapshot.getRects();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            child.measure(MeasureSpec.makeMeasureSpec(rects[r + 2] - rects[r],
+                    MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
+                    rects[r + 3] - rects[r + 1], MeasureSpec.EXACTLY));
+
+            // The regular pass after it must ask the child again
+            ((LayoutParams) child.getLayoutParams()).invalidateMeasureCache();
+        }
+
+        mAppliedSnapshot = snapshot;
+        markAllTracksDirty();
+        setMeasuredDimension(snapshot.getWidth(), snapshot.getHeight());
+        return true;
+    }
+
+    private void layoutSnapshot(GridSnapshot snapshot, int childCount) {
+        final int[] rects = snapshot.getRects();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final int r = i * GridLayoutEngine.RECT_STRIDE;
+            child.layout(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]);
+            lp.mLaidOutSpec = lp.mCellSpec;
+        }
+
+        mCellIndexDirty = true;
+    }
+
+    /**
+     * Write the first solved layout once the file was read, so an unchanged
+     * one is not written again.
+     */
+    private void scheduleSnapshotFileWrite() {
+        if (mSnapshotFile != null && mSnapshotFile.claimWrite()) {
+            post(mWriteSnapshot);
+        }
+    }
+
+    private void writeSnapshotFile() {
+        final GridSnapshotFile file = mSnapshotFile;
+        final GridSnapshot snapshot = takeSnapshot();
+        if (file != null && snapshot != null) {
+            file.write(snapshot);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final SavedState ss = new SavedState(super.onSaveInstanceState());
+        final GridSnapshot snapshot = takeSnapshot();
+        ss.snapshot = snapshot == null ? null : snapshot.toByteArray();
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        final SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+
+        final GridSnapshot snapshot = GridSnapshot.fromByteArray(ss.snapshot);
+        if (snapshot != null) {
+            applySnapshot(snapshot);
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        byte[] snapshot;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            snapshot = in.createByteArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeByteArray(snapshot);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * Move a child to other cells, fractional ones included, keeping its
+     * spans. Meant to be called every frame of an animation: when the cells
+     * provide the size the child was measured for, it is only laid out again
+     * and no measure pass is requested.
+     */
+    public void setChildCellPosition(View child, float rowIndex,
+            float columnIndex) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        if (lp.rowIndex == rowIndex && lp.columnIndex == columnIndex) {
+            return;
+        }
+
+        lp.rowIndex = rowIndex;
+        lp.columnIndex = columnIndex;
+        if (child.getParent() != this) {
+            return;
+        }
+        if (mUpdateDepth > 0) {
+            mUpdateNeedsResolve = true;
+            requestLayout();
+            return;
+        }
+
+        resolveCellSpec(lp);
+
+        // Auto-placed children may have to make way, that needs a full pass
+        if (mAutoFlow == AUTO_FLOW_NONE && layoutInPlace(child, lp, false)) {
+            invalidate();
+        } else {
+            requestLayout();
+        }
+    }
+
+    /**
+     * Lay a child out in its resolved cells right away, if it needs no new
+     * measure for them.
+     *
+     * @return false if the child needs a layout pass instead
+     */
+    private boolean layoutInPlace(View child, LayoutParams lp, boolean animate) {
+        if (lp.mLaidOutSpec == null || isLayoutRequested()
+                || !keepsMeasure(child, lp)) {
+            return false;
+        }
+
+        markCellDirty(lp.mLaidOutSpec);
+        markCellDirty(lp.mCellSpec);
+        layoutChildInCell(child, lp, animate);
+        return true;
+    }
+
+    /**
+     * Let the user long-press a child and drag it to other cells, the other
+     * children flow around it in the order they had.
+     */
+    public void setCellDragEnabled(boolean enabled) {
+        if (enabled && mDrag == null) {
+            mDrag = new CellDragHelper(this);
+        } else if (!enabled && mDrag != null) {
+            mDrag.stopDrag();
+            mDrag = null;
+        }
+    }
+
+    public boolean isCellDragEnabled() {
+        return mDrag != null;
+    }
+
+    public void setOnCellDragListener(OnCellDragListener listener) {
+        mOnCellDragListener = listener;
+    }
+
+    boolean isDisallowingIntercept() {
+        return mDisallowIntercept;
+    }
+
+    void onCellDragStarted(View child) {
+        final int childCount = getChildCount();
+        if (mDragOrder.length < childCount) {
+            mDragOrder = new View[childCount];
+        }
+
+        // The others keep the order of their cells while they reflow
+        mDragOrderCount = 0;
+        for (int i = 0; i < childCount; i++) {
+            final View other = getChildAt(i);
+            if (other != child) {
+                mDragOrder[mDragOrderCount++] = other;
+            }
+        }
+        Arrays.sort(mDragOrder, 0, mDragOrderCount, CELL_ORDER);
+
+        if (mOnCellDragListener != null) {
+            mOnCellDragListener.onCellDragStarted(this, child);
+        }
+    }
+
+    void onCellDragEnded(View child) {
+        for (int i = 0; i < mDragOrderCount; i++) {
+            mDragOrder[i] = null;
+        }
+        mDragOrderCount = 0;
+
+        if (mOnCellDragListener != null) {
+            mOnCellDragListener.onCellDragEnded(this, child);
+        }
+    }
+
+    /**
+     * Put the dragged child on a cell and flow the others around it on the
+     * occupancy grid. Children that keep the size their cells provide are
+     * laid out right away, only the others need a layout pass.
+     */
+    void reflowAround(View dragged, int row, int column) {
+        final GridOccupancy occupancy = mOccupancy;
+        occupancy.reset(mEngine.getRowCount(), mEngine.getColumnCount());
+
+        final int flow = (mAutoFlow & AUTO_FLOW_COLUMN) != 0 ? AUTO_FLOW_COLUMN
+                : AUTO_FLOW_ROW;
+        boolean needsLayout = !moveChild(dragged, row, column, occupancy);
+
+        final int[] placement = mPlacement;
+        for (int i = 0; i < mDragOrderCount; i++) {
+            final View child = mDragOrder[i];
+            if (child.getParent() != this) {
+                continue;
+            }
+
+            final CellSpec spec = ((LayoutParams) child.getLayoutParams()).mCellSpec;
+            if (occupancy.place(-1, -1, spec.getEndRow() - spec.getFirstRow(),
+                    spec.getEndColumn() - spec.getFirstColumn(), flow,
+                    placement)) {
+                needsLayout |= !moveChild(child, placement[0], placement[1],
+                        null);
+            } else {
+                // No room, it stays where it was
+                occupancy.occupy(spec.getFirstRow(), spec.getFirstColumn(),
+                        spec.getEndRow() - spec.getFirstRow(),
+                        spec.getEndColumn() - spec.getFirstColumn());
+            }
+        }
+
+        if (needsLayout) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * Give a child a whole cell, taking it on occupancy if not null.
+     *
+     * @return false if the child needs a layout pass to get there
+     */
+    private boolean moveChild(View child, int row, int column,
+            GridOccupancy occupancy) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        lp.rowIndex = row;
+        lp.columnIndex = column;
+
+        final CellSpec spec = resolveCellSpec(lp);
+        if (occupancy != null) {
+            occupancy.occupy(spec.getFirstRow(), spec.getFirstColumn(),
+                    spec.getEndRow() - spec.getFirstRow(), spec.getEndColumn()
+                            - spec.getFirstColumn());
+        }
+
+        return spec == lp.mLaidOutSpec || spec.equals(lp.mLaidOutSpec)
+                || layoutInPlace(child, lp, mTransition != null);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (mDrag != null && mDrag.onTouchEvent(ev)) {
+            // The drag takes the gesture from the child
+            return true;
+        }
+
+        return super.onInterceptTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (mDrag != null && (mDrag.onTouchEvent(ev) || mDrag.isPressing())) {
+            // Children that ignore touches can be dragged too
+            return true;
+        }
+
+        return super.onTouchEvent(ev);
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        if (lp.scalePolicy != SCALE_CLIP || lp.mCellSpec == null) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
+
+        final int[] cell = mCell;
+        final int[] rect = mChildRect;
+        lp.mCellSpec.writeTo(cell, 0);
+        mEngine.getCellRect(cell, 0, rect, 0);
+
+        final int saveCount = canvas.save();
+        canvas.clipRect(rect[0], rect[1], rect[2], rect[3]);
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (mDrawableCells != null) {
+            // Under the children, like a background of tiles
+            mDrawableCells.draw(canvas);
+        }
+
+        super.dispatchDraw(canvas);
+
+        if (mDrag != null) {
+            mDrag.draw(canvas);
+        }
+    }
+
+    /**
+     * Add a drawable the grid draws in the given cells itself, center-cropped
+     * like an ImageView with scaleType centerCrop, without a child View.
+     * Drawable cells are drawn under the children in the order they were
+     * added, and take the tracks as the children size them: they do not size
+     * wrap tracks themselves.
+     *
+     * @return the index of the drawable cell
+     */
+    public int addDrawableCell(Drawable drawable, float rowIndex,
+            float rowSpec, float columnIndex, float columnSpec) {
+        if (rowIndex < 0 || columnIndex < 0 || rowSpec <= 0
+                || columnSpec <= 0) {
+            throw new IllegalArgumentException("Drawable cell needs a row from "
+                    + rowIndex + " spanning " + rowSpec + " , column from "
+                    + columnIndex + " spanning " + columnSpec + " .");
+        }
+
+        if (mDrawableCells == null) {
+            mDrawableCells = new CellDrawables(this);
+        }
+        final int index = mDrawableCells.add(drawable, rowIndex, rowSpec,
+                columnIndex, columnSpec);
+        invalidate();
+        return index;
+    }
+
+    /**
+     * Replace the drawable of a drawable cell, e.g. once its image is loaded.
+     * Null leaves the cells empty.
+     */
+    public void setDrawableCell(int index, Drawable drawable) {
+        checkDrawableCells();
+        mDrawableCells.set(index, drawable);
+        invalidate();
+    }
+
+    public Drawable getDrawableCell(int index) {
+        checkDrawableCells();
+        return mDrawableCells.get(index);
+    }
+
+    /**
+     * Remove a drawable cell, the ones after it move down an index.
+     */
+    public void removeDrawableCell(int index) {
+        checkDrawableCells();
+        mDrawableCells.remove(index);
+        invalidate();
+    }
+
+    public void clearDrawableCells() {
+        if (mDrawableCells != null && mDrawableCells.getCount() > 0) {
+            mDrawableCells.clear();
+            invalidate();
+        }
+    }
+
+    public int getDrawableCellCount() {
+        return mDrawableCells == null ? 0 : mDrawableCells.getCount();
+    }
+
+    /**
+     * @return the index of the topmost drawable cell under the point, in the
+     *         coordinates of this view, or -1
+     */
+    public int findDrawableCellAt(int x, int y) {
+        return mDrawableCells == null ? -1 : mDrawableCells.indexAt(x
+                + getScrollX(), y + getScrollY());
+    }
+
+    private void checkDrawableCells() {
+        if (mDrawableCells == null) {
+            throw new IndexOutOfBoundsException("No drawable cells.");
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        // Lets animated drawables of drawable cells invalidate the grid
+        return super.verifyDrawable(who)
+                || (mDrawableCells != null && mDrawableCells.contains(who));
+    }
+
+    /**
+     * @return true if the child was measured for exactly what its current
+     *         cells provide
+     */
+    private boolean keepsMeasure(View child, LayoutParams lp) {
+        if (asSubgrid(child) != null) {
+            // Its tracks are the ones under its cells, they differ
+            return false;
+        }
 
-            mColumnCount = a.getInt(
-                    R.styleable.DolphinGridLayout_columnCount,
-                    DEFAULT_ROW_AND_COLUMN_COUNT);
+        final GridLayoutEngine engine = mEngine;
+        final CellSpec spec = lp.mCellSpec;
 
-            mItemSpaceHorizontal = (int) a.getDimension(
-                    R.styleable.DolphinGridLayout_itemSpaceHorizontal, 0);
-            mItemSpaceVertical = (int) a.getDimension(
-                    R.styleable.DolphinGridLayout_itemSpaceVertical, 0);
+        final int heightProvide = engine.getSpanHeight(spec.rowIndex,
+                spec.rowSpec);
+        final int widthProvide = engine.getSpanWidth(spec.columnIndex,
+                spec.columnSpec);
 
-            a.recycle();
-        }
+        final int[] childSpecs = mChildSpecs;
+        GridLayoutEngine.makeChildMeasureSpecs(lp.width, lp.height,
+                widthProvide, heightProvide, lp.scalePolicy, childSpecs, 0);
 
+        return !child.isLayoutRequested()
+                && lp.isMeasuredFor(childSpecs[0], childSpecs[1],
+                        lp.fingerprint(widthProvide, heightProvide));
     }
 
-    private void init() {
-        mPadding = new Rect(getPaddingLeft(), getPaddingTop(),
-                getPaddingRight(), getPaddingBottom());
+    /**
+     * Position a measured child inside its cells.
+     */
+    void layoutChildInCell(View child, LayoutParams lp) {
+        layoutChildInCell(child, lp, false);
     }
 
-    @Override
-    protected void onFinishInflate() {
-        super.onFinishInflate();
-
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            checkParamsLegaled((LayoutParams) getChildAt(i).getLayoutParams());
+    /**
+     * @param animate whether a child laid out before moves there through the
+     *            cell transition
+     */
+    private void layoutChildInCell(View child, LayoutParams lp,
+            boolean animate) {
+        mCellIndexDirty = true;
+
+        final int[] cell = mCell;
+        final int[] rect = mChildRect;
+        lp.mCellSpec.writeTo(cell, 0);
+
+        // We should layout it now.
+        mEngine.layoutCell(cell, 0, lp.gravity, child.getMeasuredWidth(),
+                child.getMeasuredHeight(), rect, 0);
+
+        if (animate && lp.mLaidOutSpec != null
+                && mTransition.animate(child, lp, rect)) {
+            // Keep it where it is for this frame, the transition takes over
+            child.layout(child.getLeft(), child.getTop(), child.getRight(),
+                    child.getBottom());
+        } else {
+            if (mTransition != null) {
+                mTransition.cancel(lp);
+            }
+            child.layout(rect[0], rect[1], rect[2], rect[3]);
         }
+        lp.mLaidOutSpec = lp.mCellSpec;
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
-        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
-        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
-        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
-
-        mRowHeight = (heightSize - mPadding.top - mPadding.bottom - (mRowCount - 1)
-                * mItemSpaceVertical)
-                / mRowCount;
-        mColumnWith = (widthSize - mPadding.left - mPadding.right - (mColumnCount - 1)
-                * mItemSpaceVertical)
-                / mColumnCount;
-
-        final int childCount = getChildCount();
-        if (mColumnCount > 0 && widthMode == MeasureSpec.UNSPECIFIED) {
-            measureChildInWidthModeUNSPECIFIED(childCount);
+    /**
+     * @return the topmost child whose cells cover the given whole cell, or
+     *         null
+     */
+    public View getChildAtCell(int row, int column) {
+        ensureCellIndex();
 
-            widthSize = mPadding.left + mPadding.right + (mColumnCount - 1)
-                    * mItemSpaceHorizontal + mColumnCount * mColumnWith;
+        final int indexRow = row - mCellIndexFirstRow;
+        if (indexRow < 0 || indexRow >= mCellIndexRowCount || column < 0
+                || column >= mCellIndexColumnCount) {
+            return null;
         }
 
-        if (mRowCount > 0 && heightMode == MeasureSpec.UNSPECIFIED) {
-            measureChildInHeightModeUNSPECIFIED(childCount);
+        final int child = mCellIndex[indexRow * mCellIndexColumnCount + column];
+        return child < 0 ? null : getChildAt(child);
+    }
 
-            heightSize = mPadding.top + mPadding.bottom + (mRowCount - 1)
-                    * mItemSpaceVertical + mRowCount * mRowHeight;
+    /**
+     * Find the topmost visible child under a point, in the coordinates of
+     * this view like touch events. The cell under the point is looked up
+     * first, the children are only scanned when it misses, e.g. for children
+     * on fractional cells.
+     */
+    public View findChildAt(int x, int y) {
+        final int contentX = x + getScrollX();
+        final int contentY = y + getScrollY();
+
+        final int row = mEngine.findRowAt(contentY);
+        final int column = mEngine.findColumnAt(contentX);
+        final View cellChild = getChildAtCell(row, column);
+        if (cellChild != null && isUnder(cellChild, contentX, contentY)) {
+            return cellChild;
         }
 
-        // Measure child, and check whether child need re-measure to meet parent
-        for (int i = 0; i < childCount; i++) {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
             final View child = getChildAt(i);
+            if (isUnder(child, contentX, contentY)) {
+                return child;
+            }
+        }
 
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            checkParamsLegaled(lp);
+        return null;
+    }
 
-            // Calculate whether need re-measure
-            final int heightProvide = (int) (lp.rowSpec * mRowHeight + (lp.rowSpec - 1)
-                    * mItemSpaceVertical);
-            final int widthProvide = (int) (lp.columnSpec * mColumnWith + (lp.columnSpec - 1)
-                    * mItemSpaceHorizontal);
+    /**
+     * Size the cells of a child provide, known before the child is laid out
+     * once the grid has been measured, e.g. to decode its image for it.
+     *
+     * @return false if child is not in this grid or the grid was not measured
+     */
+    public boolean getCellSize(View child, int[] outSize) {
+        if (child.getParent() != this) {
+            return false;
+        }
 
-            int heightSpec = makeMeasuerSpec(lp.height, heightProvide);
-            int widthSpec = makeMeasuerSpec(lp.width, widthProvide);
+        final CellSpec spec = ((LayoutParams) child.getLayoutParams()).mCellSpec;
+        if (spec == null) {
+            return false;
+        }
 
-            child.measure(widthSpec, heightSpec);
+        outSize[0] = mEngine.getSpanWidth(spec.columnIndex, spec.columnSpec);
+        outSize[1] = mEngine.getSpanHeight(spec.rowIndex, spec.rowSpec);
+        return outSize[0] > 0 && outSize[1] > 0;
+    }
 
-            int childWidth = child.getMeasuredWidth();
-            int childHeight = child.getMeasuredHeight();
+    private static boolean isUnder(View child, int x, int y) {
+        return child.getVisibility() == VISIBLE && x >= child.getLeft()
+                && x < child.getRight() && y >= child.getTop()
+                && y < child.getBottom();
+    }
 
-            if (childWidth > widthProvide || childHeight > heightProvide) {
-                if (widthProvide - childWidth >= heightProvide - childHeight) {
-                    // Width based
-                    final float ratio = (float) widthProvide / childWidth;
-                    childHeight = (int) (childHeight * ratio);
-                    childWidth = (int) (childWidth * ratio);
-                } else {
-                    // Height based
-                    final float ratio = (float) heightProvide / childHeight;
-                    childWidth = (int) (childWidth * ratio);
-                    childHeight = (int) (childHeight * ratio);
-                }
+    private void ensureCellIndex() {
+        if (!mCellIndexDirty) {
+            return;
+        }
 
-                // Re-measure to meet parent provide
-                child.measure(MeasureSpec.makeMeasureSpec(childWidth,
-                        MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(
-                        childHeight, MeasureSpec.EXACTLY));
+        final int childCount = getChildCount();
+        int firstRow = Integer.MAX_VALUE;
+        int endRow = 0;
+        for (int i = 0; i < childCount; i++) {
+            final CellSpec spec = ((LayoutParams) getChildAt(i)
+                    .getLayoutParams()).mCellSpec;
+            if (spec != null) {
+                firstRow = Math.min(firstRow, spec.getFirstRow());
+                endRow = Math.max(endRow, spec.getEndRow());
             }
         }
 
-        setMeasuredDimension(widthSize, heightSize);
-    }
+        final int columnCount = mEngine.getColumnCount();
+        final int rowCount = Math.max(0, endRow - firstRow);
+        final int size = rowCount * columnCount;
+        if (mCellIndex.length < size) {
+            mCellIndex = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            mCellIndex[i] = -1;
+        }
 
-    private void measureChildInWidthModeUNSPECIFIED(int childCount) {
+        // Later children draw on top, so they win the cells they share
         for (int i = 0; i < childCount; i++) {
             final View child = getChildAt(i);
-
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            checkParamsLegaled(lp);
-
-            final int height = (int) (mRowHeight * lp.rowSpec + (lp.rowSpec - 1)
-                    * mItemSpaceVertical);
-
-            if (lp.width < 0) {
-                child.measure(
-                        MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
-                        makeMeasuerSpec(lp.height, height));
-            } else {
-                child.measure(
-                        MeasureSpec.makeMeasureSpec(lp.width, MeasureSpec.EXACTLY),
-                        makeMeasuerSpec(lp.height, height));
+            final CellSpec spec = ((LayoutParams) child.getLayoutParams()).mCellSpec;
+            if (spec == null || child.getVisibility() != VISIBLE) {
+                continue;
             }
 
-            int childWidth = child.getMeasuredWidth();
-
-            int tempColumnWidth = (int) ((childWidth
-                    - (lp.columnSpec - 1)
-                    * mItemSpaceHorizontal) / lp.columnSpec);
-            if (mColumnWith < tempColumnWidth) {
-                mColumnWith = tempColumnWidth;
+            final int endColumn = Math.min(columnCount, spec.getEndColumn());
+            for (int r = spec.getFirstRow(); r < spec.getEndRow(); r++) {
+                final int from = (r - firstRow) * columnCount;
+                for (int c = spec.getFirstColumn(); c < endColumn; c++) {
+                    mCellIndex[from + c] = i;
+                }
             }
         }
+
+        mCellIndexFirstRow = firstRow;
+        mCellIndexRowCount = rowCount;
+        mCellIndexColumnCount = columnCount;
+        mCellIndexDirty = false;
     }
 
-    private void measureChildInHeightModeUNSPECIFIED(int childCount) {
-        for (int i = 0; i < childCount; i++) {
-            final View child = getChildAt(i);
+    @Override
+    public void requestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+        mDisallowIntercept = disallowIntercept;
+        super.requestDisallowInterceptTouchEvent(disallowIntercept);
+    }
 
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            checkParamsLegaled(lp);
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        if ((ev.getAction() & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN) {
+            // ViewGroup clears the request on down without telling us
+            mDisallowIntercept = false;
+        }
 
-            final int width = (int) (mColumnWith * lp.columnSpec + (lp.columnSpec - 1)
-                    * mItemSpaceHorizontal);
+        return super.dispatchTouchEvent(ev);
+    }
 
-            if (lp.height < 0) {
-                child.measure(
-                        makeMeasuerSpec(lp.width, width),
-                        MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
-            } else {
-                child.measure(
-                        makeMeasuerSpec(lp.width, width),
-                        MeasureSpec.makeMeasureSpec(lp.height, MeasureSpec.EXACTLY));
-            }
+    /**
+     * Mark every track a cell covers, so children overlapping it get laid out
+     * on the next pass.
+     */
+    private void markCellDirty(CellSpec spec) {
+        if (mAllTracksDirty || spec == null) {
+            return;
+        }
 
-            int childHeight = child.getMeasuredHeight();
+        mDirtyRows.set(spec.getFirstRow(), spec.getEndRow());
+        mDirtyColumns.set(spec.getFirstColumn(), spec.getEndColumn());
+    }
 
+    private boolean isCellDirty(CellSpec spec) {
+        return isTrackRangeDirty(mDirtyRows, spec.getFirstRow(),
+                spec.getEndRow())
+                && isTrackRangeDirty(mDirtyColumns, spec.getFirstColumn(),
+                        spec.getEndColumn());
+    }
 
-            int tempRowHeight = (int) ((childHeight
-                    - (lp.rowSpec - 1)
-                    * mItemSpaceVertical) / lp.rowSpec);
-            if (mRowHeight < tempRowHeight) {
-                mRowHeight = tempRowHeight;
-            }
-        }
+    private static boolean isTrackRangeDirty(BitSet dirty, int first, int end) {
+        final int next = dirty.nextSetBit(first);
+        return next >= 0 && next < end;
     }
 
-    private int makeMeasuerSpec(int childSize, int provideSize) {
-        int measureSpec = 0;
+    /**
+     * Lay out every child on the next pass.
+     */
+    private void markAllTracksDirty() {
+        mAllTracksDirty = true;
+    }
 
-        if (childSize > 0) {
-            measureSpec = MeasureSpec.makeMeasureSpec(childSize,
-                    MeasureSpec.EXACTLY);
-        } else {
-            if (childSize == LayoutParams.MATCH_PARENT) {
-                measureSpec = MeasureSpec.makeMeasureSpec(provideSize,
-                        MeasureSpec.EXACTLY);
-            } else {
-                measureSpec = MeasureSpec.makeMeasureSpec(provideSize,
-                        MeasureSpec.AT_MOST);
-            }
+    /**
+     * Make sure lp holds a cell spec normalized against the current row and
+     * column counts. Cheap when nothing changed, so it is safe to call from
+     * measure; the warning is only logged when a new spec gets built.
+     *
+     * @return the cell spec of lp
+     */
+    CellSpec resolveCellSpec(LayoutParams lp) {
+        final GridLayoutEngine engine = mEngine;
+        final int rowCount = engine.getRowCount();
+        final int columnCount = engine.getColumnCount();
+        if (!lp.isCellSpecStale(rowCount, columnCount)) {
+            return lp.mCellSpec;
         }
 
-        return measureSpec;
+        // A missing index starts at 0 until placeChildren finds it a cell
+        final int[] cell = mCell;
+        cell[GridLayoutEngine.CELL_ROW_INDEX] = lp.rowIndex < 0 ? 0
+                : GridLayoutEngine.toCellFixed(lp.rowIndex);
+        cell[GridLayoutEngine.CELL_ROW_SPEC] = GridLayoutEngine
+                .toCellFixed(lp.rowSpec);
+        cell[GridLayoutEngine.CELL_COLUMN_INDEX] = lp.columnIndex < 0 ? 0
+                : GridLayoutEngine.toCellFixed(lp.columnIndex);
+        cell[GridLayoutEngine.CELL_COLUMN_SPEC] = GridLayoutEngine
+                .toCellFixed(lp.columnSpec);
+
+        final boolean clamped = engine.clampCell(cell, 0);
+        final CellSpec spec = CellSpec.from(cell, 0);
+        if (clamped) {
+            Log.w(DEBUG_TAG, "Child need row from " + lp.rowIndex + " to "
+                    + (lp.rowIndex + lp.rowSpec - 1) + " , column from "
+                    + lp.columnIndex + " to "
+                    + (lp.columnIndex + lp.columnSpec - 1)
+                    + " . But total row count is " + rowCount
+                    + " , column count is " + columnCount + " . Use " + spec
+                    + " instead.");
+        }
+
+        lp.setCellSpec(spec, rowCount, columnCount);
+        mPlacementDirty = true;
+        return spec;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right,
-            int bottom) {
+    /**
+     * Normalize the params of every child again, the grid they were clamped
+     * to changed.
+     */
+    private void resolveAllCellSpecs() {
         final int childCount = getChildCount();
-
         for (int i = 0; i < childCount; i++) {
-            final View child = getChildAt(i);
-
-            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-
-            final float childRowStart = lp.rowIndex;
-            final float childColumnStart = lp.columnIndex;
-
-            final int childWidth = child.getMeasuredWidth();
-            final int childHeight = child.getMeasuredHeight();
-
-            // We should layout it now.
-            int layoutTop = 0;
-            int layoutLeft = 0;
-            final int layoutGravity = lp.gravity;
-            switch (layoutGravity) {
-                case Gravity.LEFT:
-                case Gravity.START:
-                case Gravity.LEFT | Gravity.TOP:
-                    layoutTop = calculateTop4Top(childRowStart);
-                    layoutLeft = calculateLeft4Left(childColumnStart);
-                    break;
-                case Gravity.LEFT | Gravity.BOTTOM:
-                    layoutTop = calculateTop4Bottom(childRowStart + lp.rowSpec - 1,
-                            childHeight);
-                    layoutLeft = calculateLeft4Left(childColumnStart);
-                    break;
-                case Gravity.RIGHT:
-                case Gravity.RIGHT | Gravity.TOP:
-                    layoutTop = calculateTop4Top(childRowStart);
-                    layoutLeft = calculateLeft4Right(childColumnStart
-                            + lp.columnSpec - 1, childWidth);
-                    break;
-                case Gravity.END:
-                case Gravity.RIGHT | Gravity.BOTTOM:
-                    layoutTop = calculateTop4Bottom(childRowStart + lp.rowSpec - 1,
-                            childHeight);
-                    layoutLeft = calculateLeft4Right(childColumnStart
-                            + lp.columnSpec - 1, childWidth);
-                    break;
-                case Gravity.CENTER:
-                    layoutTop = calculateTop4CenterVertical(childRowStart,
-                            childRowStart + lp.rowSpec - 1, childHeight);
-                    layoutLeft = calculateLeft4CenterHorizontal(childColumnStart,
-                            childColumnStart + lp.columnSpec - 1, childWidth);
-                    break;
-                case Gravity.CENTER_VERTICAL:
-                case Gravity.CENTER_VERTICAL | Gravity.LEFT:
-                    layoutTop = calculateTop4CenterVertical(childRowStart,
-                            childRowStart + lp.rowSpec - 1, childHeight);
-                    layoutLeft = calculateLeft4Left(childColumnStart);
-                    break;
-                case Gravity.CENTER_VERTICAL | Gravity.RIGHT:
-                    layoutTop = calculateTop4CenterVertical(childRowStart,
-                            childRowStart + lp.rowSpec - 1, childHeight);
-                    layoutLeft = calculateLeft4Right(childColumnStart
-                            + lp.columnSpec - 1, childWidth);
-                    break;
-                case Gravity.CENTER_HORIZONTAL:
-                case Gravity.CENTER_HORIZONTAL | Gravity.TOP:
-                    layoutTop = calculateTop4Top(childRowStart);
-                    layoutLeft = calculateLeft4CenterHorizontal(childColumnStart,
-                            childColumnStart + lp.columnSpec - 1, childWidth);
-                    break;
-                case Gravity.CENTER_HORIZONTAL | Gravity.BOTTOM:
-                    layoutTop = calculateTop4Bottom(childRowStart + lp.rowSpec - 1,
-                            childHeight);
-                    layoutLeft = calculateLeft4CenterHorizontal(childColumnStart,
-                            childColumnStart + lp.columnSpec - 1, childWidth);
-                    break;
-                default:
-                    layoutTop = calculateTop4Top(childRowStart);
-                    layoutLeft = calculateLeft4Left(childColumnStart);
-                    break;
-            }
-
-            child.layout(layoutLeft, layoutTop, layoutLeft + childWidth,
-                    layoutTop + childHeight);
-        }
-    }
-
-    private int calculateLeft4Left(float columnStart) {
-        int left = (int) (mPadding.left + columnStart
-                * (mItemSpaceHorizontal + mColumnWith));
-
-        return left;
-    }
-
-    private int calculateTop4Top(float rowStart) {
-        int top = (int) (mPadding.top + rowStart
-                * (mItemSpaceVertical + mRowHeight));
-
-        return top;
-    }
-
-    private int calculateTop4Bottom(float rowEnd, float childHeight) {
-        int top = (int) (mPadding.top + rowEnd
-                * (mItemSpaceVertical + mRowHeight) - childHeight);
-
-        return top;
-    }
-
-    private int calculateLeft4Right(float columnEnd, float childWidth) {
-        int left = (int) (mPadding.left + columnEnd
-                * (mItemSpaceHorizontal + mColumnCount) - childWidth);
-
-        return left;
-    }
-
-    private int calculateLeft4CenterHorizontal(float columnStart,
-            float columnEnd, int childWidth) {
-        float leftBoundary = mPadding.left + columnStart
-                * (mItemSpaceHorizontal + mColumnWith);
-        float rightBoundary = leftBoundary + (columnEnd - columnStart)
-                * mItemSpaceHorizontal + (columnEnd - columnStart + 1)
-                * mColumnWith;
-        int left = (int) (leftBoundary + (rightBoundary - leftBoundary) / 2 - childWidth / 2);
-
-        return left;
-    }
-
-    private int calculateTop4CenterVertical(float rowStart, float rowEnd,
-            int childHeight) {
-        float topBoundary = mPadding.top + rowStart
-                * (mItemSpaceVertical + mRowHeight);
-        float bottomBoundary = topBoundary + (rowEnd - rowStart)
-                * mItemSpaceVertical + (rowEnd - rowStart + 1) * mRowHeight;
-        int top = (int) (topBoundary + (bottomBoundary - topBoundary) / 2 - childHeight / 2);
-
-        return top;
-    }
-
-    private void checkParamsLegaled(LayoutParams lp) {
-        final int rowCount = mRowCount;
-        final int columnCount = mColumnCount;
-
-        final float rowEnd = lp.rowIndex + lp.rowSpec - 1;
-        if (rowEnd > rowCount - 1) {
-            lp.rowSpec = rowCount - lp.rowIndex;
-
-            if (lp.rowSpec == 0) {
-                lp.rowSpec = 1;
-                lp.rowIndex--;
-
-                Log.w(DEBUG_TAG, "Child need row from " + lp.rowIndex + " to "
-                        + rowEnd + " . But total row count is " + rowCount
-                        + " . Set rowSpec to " + lp.rowSpec + " , rowIndex to "
-                        + lp.rowIndex + " .");
-            } else {
-                Log.w(DEBUG_TAG, "Child need row from " + lp.rowIndex + " to "
-                        + rowEnd + " . But total row count is " + rowCount
-                        + " . Set rowSpec to " + lp.rowSpec);
-            }
+            resolveCellSpec((LayoutParams) getChildAt(i).getLayoutParams());
         }
+    }
 
-        final float columnEnd = lp.columnIndex + lp.columnSpec - 1;
-        if (columnEnd > columnCount - 1) {
-            lp.columnSpec = columnCount - lp.columnIndex;
-
-            if (lp.columnSpec == 0) {
-                lp.columnSpec = 1;
-                lp.columnIndex--;
-
-                Log.w(DEBUG_TAG, "Child need column from " + lp.columnIndex
-                        + " to " + columnEnd + " . But total column count is "
-                        + columnCount + " . Set columnSpec to " + lp.columnSpec
-                        + " , columnIndex to " + lp.columnIndex + " .");
-            } else {
-                Log.w(DEBUG_TAG, "Child need column from " + lp.columnIndex
-                        + " to " + columnEnd + " . But total column count is "
-                        + columnCount + " . Set columnSpec to " + lp.columnSpec);
-            }
+    /**
+     * Same, or at the end of the running batch.
+     */
+    private void resolveAllCellSpecsOrDefer() {
+        if (mUpdateDepth > 0) {
+            mUpdateNeedsResolve = true;
+        } else {
+            resolveAllCellSpecs();
         }
     }
 
@@ -437,13 +2180,23 @@ public class DolphinGridLayout extends ViewGroup {
         return new LayoutParams(getContext(), attrs);
     }
 
+    public int getRowCount() {
+        return mEngine.getRowCount();
+    }
+
+    public int getColumnCount() {
+        return mEngine.getColumnCount();
+    }
+
     public void setRowCount(int count) {
         if (count <= 0) {
             throw new IllegalArgumentException(
                     "Row count less than 0. Do you really want to do this?");
         }
 
-        mRowCount = count;
+        mEngine.setRowCount(count);
+        markAllTracksDirty();
+        resolveAllCellSpecsOrDefer();
 
         requestLayout();
     }
@@ -454,11 +2207,121 @@ public class DolphinGridLayout extends ViewGroup {
                     "Column count less than 0. Do you really want to do this?");
         }
 
-        mColumnCount = count;
+        mEngine.setColumnCount(count);
+        markAllTracksDirty();
+        resolveAllCellSpecsOrDefer();
+
+        requestLayout();
+    }
+
+    /**
+     * Define how a column is sized. Columns not defined take a weight of 1,
+     * so by default they all share the width evenly.
+     *
+     * @param type {@link #TRACK_WEIGHT}, {@link #TRACK_FIXED} or
+     *            {@link #TRACK_WRAP}
+     * @param value the weight, the size in px, or ignored for wrap
+     */
+    public void setColumnTrack(int column, int type, float value) {
+        checkTrack(column, type, value);
+
+        mEngine.setColumnTrack(column, type, value);
+        markAllTracksDirty();
+        requestLayout();
+    }
+
+    /**
+     * Define how a row is sized, see {@link #setColumnTrack(int, int, float)}.
+     */
+    public void setRowTrack(int row, int type, float value) {
+        checkTrack(row, type, value);
+
+        mEngine.setRowTrack(row, type, value);
+        markAllTracksDirty();
+        requestLayout();
+    }
+
+    public void clearColumnTracks() {
+        mEngine.clearColumnTracks();
+        markAllTracksDirty();
+        requestLayout();
+    }
 
+    public void clearRowTracks() {
+        mEngine.clearRowTracks();
+        markAllTracksDirty();
         requestLayout();
     }
 
+    private static void checkTrack(int track, int type, float value) {
+        if (track < 0) {
+            throw new IllegalArgumentException("Track index less than 0.");
+        }
+        if (type != TRACK_WEIGHT && type != TRACK_FIXED && type != TRACK_WRAP) {
+            throw new IllegalArgumentException("Unknown track type " + type);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(
+                    "Track weight or size less than 0.");
+        }
+    }
+
+    /**
+     * Read track definitions like "48dp wrap 2* *": a dimension in px, dp or
+     * sp is fixed, "wrap" wraps content and "n*" is a weight of n.
+     */
+    private void parseTracks(String tracks, boolean rows) {
+        if (tracks == null) {
+            return;
+        }
+
+        final String[] tokens = tracks.trim().split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            final String token = tokens[i];
+            if (token.length() == 0) {
+                continue;
+            }
+
+            int type = TRACK_FIXED;
+            float value;
+            try {
+                if (token.equals("wrap")) {
+                    type = TRACK_WRAP;
+                    value = 0;
+                } else if (token.endsWith("*")) {
+                    type = TRACK_WEIGHT;
+                    value = token.length() == 1 ? 1 : Float.parseFloat(token
+                            .substring(0, token.length() - 1));
+                } else if (token.endsWith("dp") || token.endsWith("dip")) {
+                    value = toPixels(TypedValue.COMPLEX_UNIT_DIP, token,
+                            token.endsWith("dp") ? 2 : 3);
+                } else if (token.endsWith("sp")) {
+                    value = toPixels(TypedValue.COMPLEX_UNIT_SP, token, 2);
+                } else if (token.endsWith("px")) {
+                    value = toPixels(TypedValue.COMPLEX_UNIT_PX, token, 2);
+                } else {
+                    value = Float.parseFloat(token);
+                }
+            } catch (NumberFormatException e) {
+                Log.w(DEBUG_TAG, "Can not read track size \"" + token
+                        + "\", it keeps a weight of 1.");
+                continue;
+            }
+
+            if (rows) {
+                mEngine.setRowTrack(i, type, Math.max(0, value));
+            } else {
+                mEngine.setColumnTrack(i, type, Math.max(0, value));
+            }
+        }
+    }
+
+    private float toPixels(int unit, String token, int suffix) {
+        return TypedValue.applyDimension(unit, Float.parseFloat(token
+                .substring(0, token.length() - suffix)), getResources()
+                .getDisplayMetrics());
+    }
+
     public void setItemHorizontalSpace(int space) {
         if (space < 0) {
             Log.w(DEBUG_TAG,
@@ -468,7 +2331,8 @@ public class DolphinGridLayout extends ViewGroup {
             return;
         }
 
-        mItemSpaceHorizontal = space;
+        mEngine.setItemHorizontalSpace(space);
+        markAllTracksDirty();
         requestLayout();
     }
 
@@ -480,10 +2344,88 @@ public class DolphinGridLayout extends ViewGroup {
             return;
         }
 
-        mItemSpaceVertical = space;
+        mEngine.setItemVerticalSpace(space);
+        markAllTracksDirty();
         requestLayout();
     }
 
+    /**
+     * Normalizes the params of added children and marks the tracks of added
+     * and removed children dirty, then hands the event to the listener set by
+     * the user, if any.
+     */
+    private class PassThroughHierarchyChangeListener implements
+            OnHierarchyChangeListener {
+        private OnHierarchyChangeListener mOnHierarchyChangeListener;
+
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            if (parent == DolphinGridLayout.this
+                    && child.getLayoutParams() instanceof LayoutParams) {
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                lp.invalidateMeasureCache();
+                lp.mLaidOutSpec = null;
+                if (mUpdateDepth > 0) {
+                    // The counts may still change in the batch
+                    mUpdateNeedsResolve = true;
+                    markAllTracksDirty();
+                } else {
+                    markCellDirty(resolveCellSpec(lp));
+                }
+                mPlacementDirty = true;
+                mCellIndexDirty = true;
+            }
+
+            if (mOnHierarchyChangeListener != null) {
+                mOnHierarchyChangeListener.onChildViewAdded(parent, child);
+            }
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            if (parent == DolphinGridLayout.this
+                    && child.getLayoutParams() instanceof LayoutParams) {
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                markCellDirty(lp.mLaidOutSpec);
+                lp.invalidateMeasureCache();
+                lp.mLaidOutSpec = null;
+                if (mTransition != null) {
+                    mTransition.cancel(lp);
+                }
+                mPlacementDirty = true;
+                mCellIndexDirty = true;
+            }
+
+            if (mOnHierarchyChangeListener != null) {
+                mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
+            }
+        }
+    }
+
+    /**
+     * Callback for children dragged to other cells.
+     */
+    public interface OnCellDragListener {
+        void onCellDragStarted(DolphinGridLayout parent, View child);
+
+        /**
+         * Called on drop. The params of every child hold the cells it ended
+         * up in, ready to be saved.
+         */
+        void onCellDragEnded(DolphinGridLayout parent, View child);
+    }
+
+    /**
+     * Callback for children whose cells are taken by another child already.
+     */
+    public interface OnCellOverlapListener {
+        /**
+         * Called while measuring, after the cells changed, for every child
+         * overlapping one placed before it.
+         */
+        void onCellOverlap(DolphinGridLayout parent, View child);
+    }
+
     /**
      * LayoutParams for this grid layout
      * 
@@ -495,6 +2437,12 @@ public class DolphinGridLayout extends ViewGroup {
                 android.R.attr.layout_gravity
         };
 
+        /**
+         * Value of rowIndex or columnIndex for a child to be auto-placed, see
+         * {@link DolphinGridLayout#setAutoFlow(int)}.
+         */
+        public static final float UNDEFINED = -1;
+
         /**
          * Occupy in row
          */
@@ -506,17 +2454,75 @@ public class DolphinGridLayout extends ViewGroup {
         public float columnSpec;
 
         /**
-         * Index in row
+         * Index in row, or {@link #UNDEFINED}
          */
         public float rowIndex;
 
         /**
-         * Index in column
+         * Index in column, or {@link #UNDEFINED}
          */
         public float columnIndex;
 
         public int gravity = Gravity.TOP | Gravity.LEFT;
 
+        /**
+         * What happens to a child larger than its cells, one of the SCALE_
+         * constants of {@link DolphinGridLayout}
+         */
+        public int scalePolicy = SCALE_FIT;
+
+        /**
+         * Key and result of the last main-loop measure of the child holding
+         * these params, see {@link #hitMeasureCache}.
+         */
+        private boolean mMeasureCacheValid;
+        private int mCachedWidthSpec;
+        private int mCachedHeightSpec;
+        private int mCachedFingerprint;
+        private int mCachedWidth;
+        private int mCachedHeight;
+
+        /**
+         * Key and result of the last intrinsic measure. Fresh while the child
+         * still holds that result within the current pass.
+         */
+        private boolean mIntrinsicCacheValid;
+        private boolean mIntrinsicFresh;
+        private int mIntrinsicWidthSpec;
+        private int mIntrinsicHeightSpec;
+        private int mIntrinsicWidth;
+        private int mIntrinsicHeight;
+
+        /**
+         * Normalized cell, and the params and grid it was built from so an
+         * edit can be told with a few compares.
+         */
+        private CellSpec mCellSpec;
+        private float mSpecRowIndex;
+        private float mSpecRowSpec;
+        private float mSpecColumnIndex;
+        private float mSpecColumnSpec;
+        private int mSpecRowCount;
+        private int mSpecColumnCount;
+
+        /**
+         * Cell the child was last laid out in, so a move can free its old
+         * tracks. Null until it is laid out.
+         */
+        private CellSpec mLaidOutSpec;
+
+        /**
+         * Slot of the child in the running cell transition, -1 if it is not
+         * moving.
+         */
+        int mTransitionIndex = -1;
+
+        /**
+         * View type the child was bound for, so it goes back to the right
+         * pool, or {@link Adapter#IGNORE_ITEM_VIEW_TYPE} if it is not pooled.
+         */
+        int viewType = Adapter.IGNORE_ITEM_VIEW_TYPE;
+
         public LayoutParams(ViewGroup.LayoutParams lp) {
             super(lp);
             defaultParams();
@@ -533,12 +2539,15 @@ public class DolphinGridLayout extends ViewGroup {
             TypedArray a = context.obtainStyledAttributes(attrs,
                     R.styleable.DolphinGridLayout);
 
-            rowIndex = a.getFloat(R.styleable.DolphinGridLayout_rowIndex, 0);
+            rowIndex = a.getFloat(R.styleable.DolphinGridLayout_rowIndex,
+                    UNDEFINED);
             rowSpec = a.getFloat(R.styleable.DolphinGridLayout_rowSpec, 1);
             columnIndex = a.getFloat(R.styleable.DolphinGridLayout_columnIndex,
-                    0);
+                    UNDEFINED);
             columnSpec = a
                     .getFloat(R.styleable.DolphinGridLayout_columnSpec, 1);
+            scalePolicy = a.getInt(
+                    R.styleable.DolphinGridLayout_layout_scalePolicy, SCALE_FIT);
 
             a.recycle();
 
@@ -547,11 +2556,153 @@ public class DolphinGridLayout extends ViewGroup {
             b.recycle();
         }
 
+        /**
+         * Hash of everything in these params that changes how the child gets
+         * measured, mixed with the size its cells provide.
+         */
+        int fingerprint(int widthProvide, int heightProvide) {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + scalePolicy;
+            result = 31 * result + mCellSpec.rowSpec;
+            result = 31 * result + mCellSpec.columnSpec;
+            result = 31 * result + widthProvide;
+            result = 31 * result + heightProvide;
+
+            return result;
+        }
+
+        /**
+         * Whether the child can keep its current measured size instead of
+         * being measured again. A child that changed since asked for a
+         * layout, which {@link View#isLayoutRequested()} tells.
+         */
+        boolean hitMeasureCache(View child, int widthSpec, int heightSpec,
+                int fingerprint) {
+            if (!mMeasureCacheValid) {
+                return false;
+            }
+
+            return widthSpec == mCachedWidthSpec
+                    && heightSpec == mCachedHeightSpec
+                    && fingerprint == mCachedFingerprint
+                    && !child.isLayoutRequested()
+                    // Someone else measured it in between
+                    && child.getMeasuredWidth() == mCachedWidth
+                    && child.getMeasuredHeight() == mCachedHeight;
+        }
+
+        void saveMeasureCache(View child, int widthSpec, int heightSpec,
+                int fingerprint) {
+            mCachedWidthSpec = widthSpec;
+            mCachedHeightSpec = heightSpec;
+            mCachedFingerprint = fingerprint;
+            mCachedWidth = child.getMeasuredWidth();
+            mCachedHeight = child.getMeasuredHeight();
+            mMeasureCacheValid = true;
+        }
+
+        /**
+         * @return true if the last measure through the cell specs asked the
+         *         same question
+         */
+        boolean isMeasuredFor(int widthSpec, int heightSpec, int fingerprint) {
+            return mMeasureCacheValid && widthSpec == mCachedWidthSpec
+                    && heightSpec == mCachedHeightSpec
+                    && fingerprint == mCachedFingerprint;
+        }
+
+        void invalidateMeasureCache() {
+            mMeasureCacheValid = false;
+            mIntrinsicCacheValid = false;
+            mIntrinsicFresh = false;
+        }
+
+        /**
+         * Whether the intrinsic size from an earlier pass still holds, same
+         * rules as {@link #hitMeasureCache}.
+         */
+        boolean hitIntrinsicCache(View child, int widthSpec, int heightSpec) {
+            if (!mIntrinsicCacheValid) {
+                return false;
+            }
+
+            return widthSpec == mIntrinsicWidthSpec
+                    && heightSpec == mIntrinsicHeightSpec
+                    && !child.isLayoutRequested();
+        }
+
+        void saveIntrinsicMeasure(View child, int widthSpec, int heightSpec) {
+            mIntrinsicWidthSpec = widthSpec;
+            mIntrinsicHeightSpec = heightSpec;
+            mIntrinsicWidth = child.getMeasuredWidth();
+            mIntrinsicHeight = child.getMeasuredHeight();
+            mIntrinsicCacheValid = true;
+            mIntrinsicFresh = true;
+        }
+
+        /**
+         * Whether the measure the intrinsic pass just made answers the cell
+         * specs too, so the child need not be measured twice in one pass.
+         */
+        boolean reuseIntrinsicMeasure(View child, int widthSpec,
+                int heightSpec) {
+            if (!mIntrinsicFresh) {
+                return false;
+            }
+            mIntrinsicFresh = false;
+
+            return GridLayoutEngine.isMeasureReusable(mIntrinsicWidthSpec,
+                    widthSpec, child.getMeasuredWidth())
+                    && GridLayoutEngine.isMeasureReusable(mIntrinsicHeightSpec,
+                            heightSpec, child.getMeasuredHeight());
+        }
+
+        boolean isCellSpecStale(int rowCount, int columnCount) {
+            return mCellSpec == null || rowIndex != mSpecRowIndex
+                    || rowSpec != mSpecRowSpec
+                    || columnIndex != mSpecColumnIndex
+                    || columnSpec != mSpecColumnSpec
+                    || rowCount != mSpecRowCount
+                    || columnCount != mSpecColumnCount;
+        }
+
+        void setCellSpec(CellSpec spec, int rowCount, int columnCount) {
+            mCellSpec = spec;
+            mSpecRowIndex = rowIndex;
+            mSpecRowSpec = rowSpec;
+            mSpecColumnIndex = columnIndex;
+            mSpecColumnSpec = columnSpec;
+            mSpecRowCount = rowCount;
+            mSpecColumnCount = columnCount;
+        }
+
+        /**
+         * @return the normalized cell, null until the params are attached to
+         *         a grid
+         */
+        public CellSpec getCellSpec() {
+            return mCellSpec;
+        }
+
+        /**
+         * @return true if rowIndex or columnIndex is left for the grid to
+         *         pick
+         */
+        boolean isAutoPlaced() {
+            return rowIndex < 0 || columnIndex < 0;
+        }
+
+        boolean cellMoved() {
+            return mLaidOutSpec != null && mLaidOutSpec != mCellSpec
+                    && !mLaidOutSpec.equals(mCellSpec);
+        }
+
         private void defaultParams() {
             rowSpec = 1.0f;
             columnSpec = 1.0f;
-            rowIndex = 0;
-            columnIndex = 0;
+            rowIndex = UNDEFINED;
+            columnIndex = UNDEFINED;
         }
     }
 }
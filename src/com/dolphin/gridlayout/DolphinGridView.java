@@ -0,0 +1,635 @@
+package com.dolphin.gridlayout;
+
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.widget.ScrollerCompat;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.Adapter;
+import android.widget.ListAdapter;
+
+/**
+ * Vertically scrolling, adapter-backed {@link DolphinGridLayout}. Only the
+ * cells intersecting the viewport have a child view; cells scrolled out are
+ * recycled through a {@link CellViewPool} by view type and rebound by the
+ * adapter.
+ * <p>
+ * {@code rowCount} is the number of rows visible in one viewport, the total
+ * number of rows comes from the cells of the adapter items. Cells are given
+ * by a {@link CellSpecLookup} and must be ordered by rowIndex.
+ *
+ * @author dolphinWang
+ */
+public class DolphinGridView extends DolphinGridLayout {
+    private static final String DEBUG_TAG = "DolphinGridView";
+
+    private ListAdapter mAdapter;
+    private CellSpecLookup mCellSpecLookup;
+    private final AdapterDataSetObserver mDataSetObserver = new AdapterDataSetObserver();
+
+    private CellViewPool mViewPool = new CellViewPool();
+    private boolean mViewPoolShared;
+
+    /**
+     * Children attached right now, by adapter position.
+     */
+    private final SparseArray<View> mActiveViews = new SparseArray<View>();
+
+    /**
+     * Rows visible in one viewport.
+     */
+    private int mRowsPerPage;
+
+    private int mItemCount;
+    private int mTotalRowCount;
+
+    /**
+     * Packed cells of every item, and for each position the largest row end
+     * of the items up to it, so the first visible item is a binary search.
+     */
+    private int[] mCells = new int[0];
+    private int[] mMaxRowEnds = new int[0];
+    private final int[] mCellSpec = new int[GridLayoutEngine.CELL_STRIDE];
+
+    private boolean mInLayout;
+
+    private final ScrollerCompat mScroller;
+    private VelocityTracker mVelocityTracker;
+    private final int mTouchSlop;
+    private final int mMinimumVelocity;
+    private final int mMaximumVelocity;
+    private float mLastMotionY;
+    private boolean mIsBeingDragged;
+
+    public DolphinGridView(Context context) {
+        this(context, null);
+    }
+
+    public DolphinGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        mRowsPerPage = getEngine().getRowCount();
+
+        mScroller = ScrollerCompat.create(context);
+        final ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+
+        setVerticalScrollBarEnabled(true);
+    }
+
+    /**
+     * Show the adapter items one per cell, row by row.
+     */
+    public void setAdapter(ListAdapter adapter) {
+        setAdapter(adapter, null);
+    }
+
+    /**
+     * Show the adapter items in the cells given by lookup.
+     */
+    public void setAdapter(ListAdapter adapter, CellSpecLookup lookup) {
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+        }
+
+        recycleAllViews();
+        if (!mViewPoolShared) {
+            mViewPool.clear();
+        }
+
+        mAdapter = adapter;
+        mCellSpecLookup = lookup;
+
+        if (mAdapter != null) {
+            mAdapter.registerDataSetObserver(mDataSetObserver);
+        }
+
+        loadCells();
+        scrollTo(0, 0);
+        requestLayout();
+    }
+
+    public ListAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    public CellViewPool getCellViewPool() {
+        return mViewPool;
+    }
+
+    /**
+     * Recycle cells through a pool shared with other grids. Grids sharing a
+     * pool must agree on what each view type is, and it is not cleared when
+     * the adapter changes.
+     */
+    public void setCellViewPool(CellViewPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Cell view pool is null.");
+        }
+        if (pool == mViewPool) {
+            return;
+        }
+
+        recycleAllViews();
+        mViewPool = pool;
+        mViewPoolShared = true;
+        requestLayout();
+    }
+
+    /**
+     * A grid view scrolls rows of its own and is never a subgrid, asking for
+     * it, from code or XML, is logged and ignored.
+     */
+    @Override
+    public void setSubgrid(boolean subgrid) {
+        if (subgrid) {
+            Log.w(DEBUG_TAG, "A grid view can not be a subgrid, ignored.");
+        }
+        super.setSubgrid(false);
+    }
+
+    /**
+     * Cells of a grid view come from its adapter and scroll, so this makes
+     * cells the adapter, see {@link #setAdapter(ListAdapter, CellSpecLookup)},
+     * recycling through pool.
+     */
+    @Override
+    public void bindCells(ListAdapter cells, CellSpecLookup lookup,
+            CellViewPool pool) {
+        setCellViewPool(pool);
+        setAdapter(cells, lookup);
+    }
+
+    @Override
+    public int getRowCount() {
+        return mRowsPerPage;
+    }
+
+    /**
+     * @return rows needed by all the adapter items
+     */
+    public int getTotalRowCount() {
+        return mTotalRowCount;
+    }
+
+    /**
+     * Set how many rows fit in one page. The grid itself has as many rows as
+     * its items need.
+     */
+    @Override
+    public void setRowCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException(
+                    "Row count less than 0. Do you really want to do this?");
+        }
+
+        // The engine row count is ours to set in onMeasure, going through
+        // super would clamp the children to a single page
+        mRowsPerPage = count;
+        requestLayout();
+    }
+
+    @Override
+    public void setColumnCount(int count) {
+        super.setColumnCount(count);
+
+        // Cells are clamped to the columns, read them again
+        recycleAllViews();
+        loadCells();
+    }
+
+    /**
+     * Read the cell of every item, clamped to the columns we have.
+     */
+    private void loadCells() {
+        final int count = mAdapter == null ? 0 : mAdapter.getCount();
+        if (mCells.length < count * GridLayoutEngine.CELL_STRIDE) {
+            mCells = new int[count * GridLayoutEngine.CELL_STRIDE];
+            mMaxRowEnds = new int[count];
+        }
+
+        final int columnCount = getColumnCount();
+        final int[] spec = mCellSpec;
+        int maxRowEnd = 0;
+        int lastRowIndex = 0;
+        boolean ordered = true;
+
+        for (int position = 0; position < count; position++) {
+            if (mCellSpecLookup != null) {
+                mCellSpecLookup.getCellSpec(position, spec);
+            } else {
+                spec[GridLayoutEngine.CELL_ROW_INDEX] = position / columnCount;
+                spec[GridLayoutEngine.CELL_ROW_SPEC] = 1;
+                spec[GridLayoutEngine.CELL_COLUMN_INDEX] = position % columnCount;
+                spec[GridLayoutEngine.CELL_COLUMN_SPEC] = 1;
+            }
+
+            final int rowIndex = Math.max(0,
+                    spec[GridLayoutEngine.CELL_ROW_INDEX]);
+            final int rowSpec = Math.max(1,
+                    spec[GridLayoutEngine.CELL_ROW_SPEC]);
+            final int columnIndex = Math.min(columnCount - 1,
+                    Math.max(0, spec[GridLayoutEngine.CELL_COLUMN_INDEX]));
+            final int columnSpec = Math.min(columnCount - columnIndex,
+                    Math.max(1, spec[GridLayoutEngine.CELL_COLUMN_SPEC]));
+
+            if (rowIndex < lastRowIndex) {
+                ordered = false;
+            }
+            lastRowIndex = rowIndex;
+
+            final int at = position * GridLayoutEngine.CELL_STRIDE;
+            mCells[at + GridLayoutEngine.CELL_ROW_INDEX] = rowIndex;
+            mCells[at + GridLayoutEngine.CELL_ROW_SPEC] = rowSpec;
+            mCells[at + GridLayoutEngine.CELL_COLUMN_INDEX] = columnIndex;
+            mCells[at + GridLayoutEngine.CELL_COLUMN_SPEC] = columnSpec;
+
+            maxRowEnd = Math.max(maxRowEnd, rowIndex + rowSpec);
+            mMaxRowEnds[position] = maxRowEnd;
+        }
+
+        if (!ordered) {
+            Log.w(DEBUG_TAG, "Cells are not ordered by rowIndex,"
+                    + " some of them may never show up.");
+        }
+
+        mItemCount = count;
+        mTotalRowCount = maxRowEnd;
+    }
+
+    @Override
+    void measureGrid(int widthMeasureSpec, int heightMeasureSpec) {
+        final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        if (MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            // Nothing bounds us, make one page as tall as it is wide
+            heightSize = widthSize;
+        }
+
+        // Rows are sized by the page, then the grid grows to all of them
+        final GridLayoutEngine engine = getEngine();
+        engine.setPadding(getPaddingLeft(), getPaddingTop(),
+                getPaddingRight(), getPaddingBottom());
+        engine.setRowCount(mRowsPerPage);
+        engine.resolveTracks(widthSize, heightSize);
+        final int rowHeight = engine.getRowHeight();
+        engine.setRowCount(Math.max(1, mTotalRowCount));
+        engine.setRowHeight(rowHeight);
+
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            resolveCellSpec(lp);
+            measureChildInCell(child, lp);
+        }
+
+        engine.commitTracks();
+
+        setMeasuredDimension(widthSize, heightSize);
+    }
+
+    @Override
+    void layoutGrid() {
+        mInLayout = true;
+
+        // The content may have shrunk under us
+        scrollTo(getScrollX(), getScrollY());
+        fillViewport();
+
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            layoutChildInCell(child, (LayoutParams) child.getLayoutParams());
+        }
+
+        mInLayout = false;
+    }
+
+    /**
+     * Recycle the children that left the viewport and add the ones that
+     * entered it.
+     */
+    private void fillViewport() {
+        if (mItemCount == 0 || getHeight() == 0) {
+            recycleAllViews();
+            return;
+        }
+
+        final GridLayoutEngine engine = getEngine();
+        final int rowStride = Math.max(1, engine.getRowHeight()
+                + engine.getItemVerticalSpace());
+        final int top = Math.max(0, getScrollY() - getPaddingTop());
+        final int bottom = getScrollY() + getHeight() - getPaddingTop();
+
+        final int firstRow = top / rowStride;
+        final int lastRow = Math.min(mTotalRowCount - 1, Math.max(0, bottom - 1)
+                / rowStride);
+
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            final CellSpec spec = ((LayoutParams) child.getLayoutParams())
+                    .getCellSpec();
+            if (spec.getEndRow() <= firstRow || spec.getFirstRow() > lastRow) {
+                recycleView(child);
+            }
+        }
+
+        final int[] cells = mCells;
+        for (int position = findFirstPosition(firstRow); position < mItemCount; position++) {
+            final int at = position * GridLayoutEngine.CELL_STRIDE;
+            final int rowIndex = cells[at + GridLayoutEngine.CELL_ROW_INDEX];
+            if (rowIndex > lastRow) {
+                break;
+            }
+
+            if (rowIndex + cells[at + GridLayoutEngine.CELL_ROW_SPEC] <= firstRow
+                    || mActiveViews.get(position) != null) {
+                continue;
+            }
+
+            final View child = obtainView(position);
+            final LayoutParams lp = mObtainedParams;
+            // Attach without asking the parents for a new layout
+            addViewInLayout(child, -1, lp, true);
+            mActiveViews.put(position, child);
+
+            measureChildInCell(child, lp);
+            if (!mInLayout) {
+                // onLayout positions everything else
+                layoutChildInCell(child, lp);
+            }
+        }
+    }
+
+    /**
+     * @return the first position whose cells reach past row
+     */
+    private int findFirstPosition(int row) {
+        int low = 0;
+        int high = mItemCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (mMaxRowEnds[mid] > row) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Params of the view last returned by {@link #obtainView(int)}, it may
+     * not hold them yet.
+     */
+    private LayoutParams mObtainedParams;
+
+    private View obtainView(int position) {
+        final int viewType = mAdapter.getItemViewType(position);
+        final View scrap = viewType == Adapter.IGNORE_ITEM_VIEW_TYPE ? null
+                : mViewPool.getScrapView(viewType);
+
+        final View child = mAdapter.getView(position, scrap, this);
+        if (scrap != null && scrap != child) {
+            mViewPool.putScrapView(viewType, scrap);
+        }
+
+        final ViewGroup.LayoutParams params = child.getLayoutParams();
+        final LayoutParams lp;
+        if (params == null) {
+            lp = generateDefaultLayoutParams();
+        } else if (!checkLayoutParams(params)) {
+            lp = generateLayoutParams(params);
+        } else {
+            lp = (LayoutParams) params;
+        }
+
+        final int at = position * GridLayoutEngine.CELL_STRIDE;
+        lp.rowIndex = mCells[at + GridLayoutEngine.CELL_ROW_INDEX];
+        lp.rowSpec = mCells[at + GridLayoutEngine.CELL_ROW_SPEC];
+        lp.columnIndex = mCells[at + GridLayoutEngine.CELL_COLUMN_INDEX];
+        lp.columnSpec = mCells[at + GridLayoutEngine.CELL_COLUMN_SPEC];
+        lp.position = position;
+        lp.viewType = viewType;
+        mObtainedParams = lp;
+
+        return child;
+    }
+
+    private void recycleView(View child) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+
+        removeViewInLayout(child);
+        mActiveViews.remove(lp.position);
+
+        if (lp.viewType != Adapter.IGNORE_ITEM_VIEW_TYPE) {
+            mViewPool.putScrapView(lp.viewType, child);
+        }
+    }
+
+    private void recycleAllViews() {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            recycleView(getChildAt(i));
+        }
+    }
+
+    private int getContentHeight() {
+        final GridLayoutEngine engine = getEngine();
+        return getPaddingTop() + getPaddingBottom() + mTotalRowCount
+                * engine.getRowHeight() + Math.max(0, mTotalRowCount - 1)
+                * engine.getItemVerticalSpace();
+    }
+
+    private int getScrollRange() {
+        return Math.max(0, getContentHeight() - getHeight());
+    }
+
+    @Override
+    public void scrollTo(int x, int y) {
+        super.scrollTo(x, Math.max(0, Math.min(y, getScrollRange())));
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+
+        if (!mInLayout) {
+            fillViewport();
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            scrollTo(getScrollX(), mScroller.getCurrY());
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return getContentHeight();
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return getScrollY();
+    }
+
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return getHeight();
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mLastMotionY = ev.getY();
+                mIsBeingDragged = !mScroller.isFinished();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (Math.abs(ev.getY() - mLastMotionY) > mTouchSlop) {
+                    mIsBeingDragged = true;
+                    mLastMotionY = ev.getY();
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mIsBeingDragged = false;
+                break;
+        }
+
+        return mIsBeingDragged;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(ev);
+
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (!mScroller.isFinished()) {
+                    mScroller.abortAnimation();
+                }
+                mLastMotionY = ev.getY();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                final float y = ev.getY();
+                int deltaY = (int) (mLastMotionY - y);
+                if (!mIsBeingDragged && Math.abs(deltaY) > mTouchSlop) {
+                    mIsBeingDragged = true;
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                    deltaY += deltaY > 0 ? -mTouchSlop : mTouchSlop;
+                }
+
+                if (mIsBeingDragged) {
+                    mLastMotionY = y;
+                    scrollBy(0, deltaY);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (mIsBeingDragged) {
+                    mVelocityTracker.computeCurrentVelocity(1000,
+                            mMaximumVelocity);
+                    final int velocityY = (int) mVelocityTracker.getYVelocity();
+                    if (Math.abs(velocityY) > mMinimumVelocity) {
+                        mScroller.fling(getScrollX(), getScrollY(), 0,
+                                -velocityY, 0, 0, 0, getScrollRange());
+                        ViewCompat.postInvalidateOnAnimation(this);
+                    }
+                }
+                endDrag();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                endDrag();
+                break;
+        }
+
+        return true;
+    }
+
+    private void endDrag() {
+        mIsBeingDragged = false;
+
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT,
+                LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams lp) {
+        return new LayoutParams(lp);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams lp) {
+        return lp instanceof LayoutParams;
+    }
+
+    @Override
+    public ViewGroup.LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    private class AdapterDataSetObserver extends DataSetObserver {
+        @Override
+        public void onChanged() {
+            recycleAllViews();
+            loadCells();
+            requestLayout();
+        }
+
+        @Override
+        public void onInvalidated() {
+            onChanged();
+        }
+    }
+
+    /**
+     * LayoutParams of an adapter-backed cell
+     *
+     * @author dolphinWang
+     */
+    public static class LayoutParams extends DolphinGridLayout.LayoutParams {
+
+        /**
+         * Adapter position the child is bound to
+         */
+        int position;
+
+        public LayoutParams(ViewGroup.LayoutParams lp) {
+            super(lp);
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+    }
+}
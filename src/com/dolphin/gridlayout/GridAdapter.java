@@ -9,10 +9,41 @@ import android.widget.ImageView;
 
 public class GridAdapter extends BaseAdapter {
 
+    private static final String[] PATTERN_NAMES = {
+            "mosaic", "square", "banner"
+    };
+
+    /**
+     * Tile patterns of the rows on a 3x3 grid, rowIndex, rowSpec,
+     * columnIndex and columnSpec per tile.
+     */
+    private static final int[][] PATTERNS = {
+            {
+                    0, 1, 0, 2, 0, 2, 2, 1, 1, 2, 0, 1, 1, 2, 1, 1, 2, 1, 2, 1
+            }, {
+                    0, 2, 0, 2, 0, 1, 2, 1, 1, 1, 2, 1, 2, 1, 0, 1, 2, 1, 1, 2
+            }, {
+                    0, 1, 0, 1, 0, 1, 1, 1, 0, 1, 2, 1, 1, 2, 0, 3
+            }
+    };
+
+    private static final int[] IMAGES = {
+            R.drawable.img1, R.drawable.img2, R.drawable.img3,
+            R.drawable.img4, R.drawable.img5
+    };
+
     LayoutInflater mInflater;
+    GridImageLoader mImageLoader;
+
+    /**
+     * Tile views shared by all the rows, whatever their pattern.
+     */
+    CellViewPool mTilePool = new CellViewPool();
 
     public GridAdapter(Context context) {
         mInflater = LayoutInflater.from(context);
+        mImageLoader = GridImageLoader.get(context);
+        mTilePool.setMaxScrapViews(0, 16);
     }
 
     @Override
@@ -40,24 +71,73 @@ public class GridAdapter extends BaseAdapter {
             convertView = mInflater.inflate(R.layout.item, parent, false);
             holder = new Holder();
             convertView.setTag(holder);
-
-            holder.img1 = (ImageView) convertView.findViewById(R.id.img1);
-            holder.img2 = (ImageView) convertView.findViewById(R.id.img2);
-            holder.img3 = (ImageView) convertView.findViewById(R.id.img3);
-            holder.img4 = (ImageView) convertView.findViewById(R.id.img4);
-            holder.img5 = (ImageView) convertView.findViewById(R.id.img5);
         } else {
             holder = (Holder) convertView.getTag();
         }
 
+        // Rows of any pattern take their tiles from the shared pool, and the
+        // layout of the pattern is solved once for all of them
+        final DolphinGridLayout row = (DolphinGridLayout) convertView;
+        final GridPattern pattern = getPattern(row, position);
+        holder.tiles.mPattern = pattern;
+        row.setPattern(pattern);
+        row.bindCells(holder.tiles, pattern, mTilePool);
+
+        // Decoded for the cells, a rebound tile drops what it still waited for
+        for (int i = 0; i < row.getChildCount(); i++) {
+            mImageLoader.load((ImageView) row.getChildAt(i),
+                    IMAGES[(position + i) % IMAGES.length]);
+        }
+
         return convertView;
     }
 
-    private static class Holder {
-        ImageView img1;
-        ImageView img2;
-        ImageView img3;
-        ImageView img4;
-        ImageView img5;
+    /**
+     * Pattern of a row, registered the first time with the setup of the row
+     * inflated from item.xml.
+     */
+    private static GridPattern getPattern(DolphinGridLayout row, int position) {
+        final int index = position % PATTERNS.length;
+        GridPattern pattern = GridPattern.get(PATTERN_NAMES[index]);
+        if (pattern == null) {
+            pattern = new GridPattern(PATTERN_NAMES[index], row.getEngine(),
+                    PATTERNS[index]);
+            GridPattern.register(pattern);
+        }
+        return pattern;
+    }
+
+    private class Holder {
+        Tiles tiles = new Tiles();
+    }
+
+    /**
+     * Tiles of one row, all ImageViews of the same view type.
+     */
+    private class Tiles extends BaseAdapter {
+        GridPattern mPattern;
+
+        @Override
+        public int getCount() {
+            return mPattern.getCount();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = mInflater.inflate(R.layout.tile, parent, false);
+            }
+            return convertView;
+        }
     }
 }
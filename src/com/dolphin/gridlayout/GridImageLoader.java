@@ -0,0 +1,309 @@
+package com.dolphin.gridlayout;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads image resources into the ImageViews of grid cells, decoded no larger
+ * than the cells they go in. Decoding runs on an executor, results are kept
+ * in a memory cache bounded in bytes, and loading another image into a view,
+ * e.g. when an adapter rebinds a recycled cell, cancels what the view was
+ * waiting for.
+ * <p>
+ * One loader is meant to be shared by every grid of the app, see
+ * {@link #get(Context)}. Call it on the UI thread.
+ *
+ * @author dolphinWang
+ */
+public class GridImageLoader {
+
+    private static final int DECODE_THREADS = 2;
+
+    private static GridImageLoader sInstance;
+
+    private final Resources mResources;
+    private final Executor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> mCache;
+
+    /**
+     * Request each view waits for, so a new one cancels it. Requests only
+     * hold their view weakly, so a view dropped while waiting takes its
+     * entry with it.
+     */
+    private final WeakHashMap<ImageView, Request> mRequests =
+            new WeakHashMap<ImageView, Request>();
+
+    private final int[] mSize = new int[2];
+
+    /**
+     * @return the loader shared by every grid, its cache takes an eighth of
+     *         the heap
+     */
+    public static GridImageLoader get(Context context) {
+        if (sInstance == null) {
+            sInstance = new GridImageLoader(context.getApplicationContext(),
+                    (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime()
+                            .maxMemory() / 8), newDecodeExecutor());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxBytes size of the memory cache
+     * @param executor where bitmaps are decoded
+     */
+    public GridImageLoader(Context context, int maxBytes, Executor executor) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size " + maxBytes
+                    + " less than 1.");
+        }
+
+        mResources = context.getResources();
+        mExecutor = executor;
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+    }
+
+    private static ExecutorService newDecodeExecutor() {
+        return Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "GridImageLoader");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Show an image resource in a view, decoded for the size of the view. In
+     * a {@link DolphinGridLayout} that size is known from the cells once the
+     * grid was measured, so a rebound cell starts decoding right away;
+     * otherwise the view is waited for until it has a size. Until the image
+     * is there the view is left empty.
+     */
+    public void load(ImageView view, int resId) {
+        cancel(view);
+
+        final Request request = new Request(view, resId);
+        if (targetSize(view, mSize)) {
+            request.mWidth = mSize[0];
+            request.mHeight = mSize[1];
+            if (request.fromCache(view)) {
+                return;
+            }
+        }
+
+        view.setImageDrawable(null);
+        mRequests.put(view, request);
+        if (request.mWidth > 0) {
+            request.start();
+        } else {
+            request.waitForLayout(view);
+        }
+    }
+
+    /**
+     * Stop loading into a view, e.g. one that is no longer shown.
+     */
+    public void cancel(ImageView view) {
+        final Request request = mRequests.remove(view);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Drop every cached bitmap, e.g. on {@link android.app.Activity#onLowMemory()}.
+     */
+    public void clearCache() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Size a view will have: what its cells provide in a grid, else its own
+     * size once laid out.
+     *
+     * @return false if it is not known yet
+     */
+    private static boolean targetSize(ImageView view, int[] outSize) {
+        if (view.getParent() instanceof DolphinGridLayout
+                && ((DolphinGridLayout) view.getParent()).getCellSize(view,
+                        outSize)) {
+            return true;
+        }
+
+        outSize[0] = view.getWidth();
+        outSize[1] = view.getHeight();
+        return outSize[0] > 0 && outSize[1] > 0;
+    }
+
+    /**
+     * @return the largest power of 2 that keeps the decoded image at least
+     *         as large as the target on both sides
+     */
+    static int sampleSize(int width, int height, int targetWidth,
+            int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth
+                && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap decode(int resId, int targetWidth, int targetHeight) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        // The cells decide the size, not the density of the resource folder
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight,
+                targetWidth, targetHeight);
+        return BitmapFactory.decodeResource(mResources, resId, options);
+    }
+
+    private static String cacheKey(int resId, int width, int height) {
+        return resId + "@" + width + "x" + height;
+    }
+
+    /**
+     * One image on its way to one view. Only the UI thread touches the view
+     * and the map of requests, the executor only decodes. The view is held
+     * weakly: the loader outlives every Activity, and a strong reference
+     * from the map's value would keep its weak key alive.
+     */
+    private class Request implements Runnable, ViewTreeObserver.OnPreDrawListener {
+        private final WeakReference<ImageView> mView;
+        private final int mResId;
+        private int mWidth;
+        private int mHeight;
+
+        private ViewTreeObserver mObserver;
+        private volatile boolean mCancelled;
+
+        Request(ImageView view, int resId) {
+            mView = new WeakReference<ImageView>(view);
+            mResId = resId;
+        }
+
+        boolean fromCache(ImageView view) {
+            final Bitmap bitmap = mCache.get(cacheKey(mResId, mWidth, mHeight));
+            if (bitmap == null) {
+                return false;
+            }
+
+            view.setImageBitmap(bitmap);
+            return true;
+        }
+
+        void waitForLayout(ImageView view) {
+            mObserver = view.getViewTreeObserver();
+            mObserver.addOnPreDrawListener(this);
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            final ImageView view = mView.get();
+            if (mCancelled || view == null) {
+                stopWaiting();
+                return true;
+            }
+            if (!mObserver.isAlive()) {
+                // Merged into the window's since, the one calling this
+                mObserver = view.getViewTreeObserver();
+            }
+            if (!targetSize(view, mSize)) {
+                // Not sized yet, a 1px target would decode far too small
+                return true;
+            }
+
+            stopWaiting();
+            mWidth = mSize[0];
+            mHeight = mSize[1];
+            if (fromCache(view)) {
+                mRequests.remove(view);
+            } else {
+                start();
+            }
+            return true;
+        }
+
+        void start() {
+            mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            final Bitmap bitmap = decode(mResId, mWidth, mHeight);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(bitmap);
+                }
+            });
+        }
+
+        private void deliver(Bitmap bitmap) {
+            if (bitmap != null) {
+                // Cached even if cancelled, the cell may come back
+                mCache.put(cacheKey(mResId, mWidth, mHeight), bitmap);
+            }
+            final ImageView view = mView.get();
+            if (mCancelled || view == null || mRequests.get(view) != this) {
+                return;
+            }
+
+            mRequests.remove(view);
+            view.setImageBitmap(bitmap);
+        }
+
+        void cancel() {
+            mCancelled = true;
+            stopWaiting();
+        }
+
+        private void stopWaiting() {
+            if (mObserver == null) {
+                return;
+            }
+
+            // A view attached since has its observer merged into the window's
+            final ImageView view = mView.get();
+            final ViewTreeObserver observer = mObserver.isAlive()
+                    || view == null ? mObserver : view.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
+            }
+            mObserver = null;
+        }
+    }
+}
@@ -0,0 +1,1311 @@
+package com.dolphin.gridlayout;
+
+/**
+ * Pure-Java grid maths behind {@link DolphinGridLayout}. It does not touch any
+ * Android class, so it can run on a plain JVM (benchmarks, server-side
+ * renderers) and the ViewGroup only has to feed it child sizes.
+ * <p>
+ * Cells are passed as packed int arrays of {@link #CELL_STRIDE} values
+ * (rowIndex, rowSpec, columnIndex, columnSpec) in fixed point, where
+ * {@link #CELL_ONE} is one whole track, sizes as packed int arrays of
+ * {@link #SIZE_STRIDE} values (width, height) and rects come back as packed
+ * int arrays of {@link #RECT_STRIDE} values (left, top, right, bottom).
+ * <p>
+ * Measure modes, size constants and gravities use the same values as
+ * {@code View.MeasureSpec}, {@code ViewGroup.LayoutParams} and
+ * {@code Gravity}, so they can be passed straight through.
+ *
+ * @author dolphinWang
+ */
+public class GridLayoutEngine {
+
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+
+    public static final int UNSPECIFIED = 0 << MODE_SHIFT;
+    public static final int EXACTLY = 1 << MODE_SHIFT;
+    public static final int AT_MOST = 2 << MODE_SHIFT;
+
+    public static final int MATCH_PARENT = -1;
+    public static final int WRAP_CONTENT = -2;
+
+    public static final int GRAVITY_CENTER_HORIZONTAL = 0x01;
+    public static final int GRAVITY_LEFT = 0x03;
+    public static final int GRAVITY_RIGHT = 0x05;
+    public static final int GRAVITY_CENTER_VERTICAL = 0x10;
+    public static final int GRAVITY_CENTER = GRAVITY_CENTER_VERTICAL
+            | GRAVITY_CENTER_HORIZONTAL;
+    public static final int GRAVITY_TOP = 0x30;
+    public static final int GRAVITY_BOTTOM = 0x50;
+    public static final int GRAVITY_START = 0x00800000 | GRAVITY_LEFT;
+    public static final int GRAVITY_END = 0x00800000 | GRAVITY_RIGHT;
+
+    private static final int GRAVITY_HORIZONTAL_MASK = 0x07;
+    private static final int GRAVITY_VERTICAL_MASK = 0x70;
+
+    public static final int CELL_STRIDE = 4;
+    public static final int CELL_ROW_INDEX = 0;
+    public static final int CELL_ROW_SPEC = 1;
+    public static final int CELL_COLUMN_INDEX = 2;
+    public static final int CELL_COLUMN_SPEC = 3;
+
+    /**
+     * Cell indexes and spans are fixed point with this many fraction bits.
+     */
+    public static final int CELL_FRACTION_BITS = 8;
+    public static final int CELL_ONE = 1 << CELL_FRACTION_BITS;
+
+    /**
+     * Track takes a share of the space left by the other tracks, in
+     * proportion to its weight. The default for every track.
+     */
+    public static final int TRACK_WEIGHT = 0;
+
+    /**
+     * Track has a fixed size in px.
+     */
+    public static final int TRACK_FIXED = 1;
+
+    /**
+     * Track is as big as the children on it need.
+     */
+    public static final int TRACK_WRAP = 2;
+
+    /**
+     * Child larger than its cells is scaled down, keeping its aspect, to fit
+     * inside them. The default.
+     */
+    public static final int SCALE_FIT = 0;
+
+    /**
+     * Child takes exactly the size of its cells.
+     */
+    public static final int SCALE_FILL = 1;
+
+    /**
+     * Child keeps its size, whatever overflows its cells is not drawn.
+     */
+    public static final int SCALE_CLIP = 2;
+
+    /**
+     * Child keeps its size and may draw over its neighbours.
+     */
+    public static final int SCALE_NONE = 3;
+
+    public static final int SIZE_STRIDE = 2;
+    public static final int RECT_STRIDE = 4;
+
+    private static final int DEFAULT_ROW_AND_COLUMN_COUNT = 1;
+
+    private int mRowCount = DEFAULT_ROW_AND_COLUMN_COUNT;
+    private int mColumnCount = DEFAULT_ROW_AND_COLUMN_COUNT;
+
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+
+    private int mItemSpaceHorizontal;
+    private int mItemSpaceVertical;
+
+    /**
+     * Base size of the tracks: the uniform size, or the largest track once
+     * they were sized to their content.
+     */
+    private int mColumnWith;
+    private int mRowHeight;
+
+    /**
+     * Size of every track. Uniform tracks give the remainder of the space to
+     * the first ones, one pixel each, so they fill it exactly.
+     */
+    private int[] mColumnSizes = new int[DEFAULT_ROW_AND_COLUMN_COUNT];
+    private int[] mRowSizes = new int[DEFAULT_ROW_AND_COLUMN_COUNT];
+
+    /**
+     * How each track is sized, one of the TRACK_ types and its px or weight.
+     * Null while every track has a weight of 1, tracks past the end of the
+     * arrays have a weight of 1 too.
+     */
+    private int[] mColumnTypes;
+    private float[] mColumnValues;
+    private int[] mRowTypes;
+    private float[] mRowValues;
+
+    /**
+     * Grid lines: line i is where track i starts, line count is one space
+     * past the end of the last track. A cell from index to index + spec
+     * spans [line(index), line(index + spec) - space).
+     */
+    private int[] mColumnLines = new int[DEFAULT_ROW_AND_COLUMN_COUNT + 1];
+    private int[] mRowLines = new int[DEFAULT_ROW_AND_COLUMN_COUNT + 1];
+    private boolean mLinesDirty = true;
+
+    /**
+     * Grid lines as of the last {@link #commitTracks()}.
+     */
+    private int[] mCommittedColumnLines = new int[0];
+    private int[] mCommittedRowLines = new int[0];
+
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+
+    private final int[] mChildSpecs = new int[2];
+
+    public GridLayoutEngine() {
+    }
+
+    /**
+     * Copy the setup of another engine, not its solved tracks, e.g. to solve
+     * on another thread while the source keeps serving the UI.
+     */
+    public GridLayoutEngine(GridLayoutEngine source) {
+        setConfig(source);
+    }
+
+    /**
+     * Take the setup of another engine, not its solved tracks.
+     */
+    public void setConfig(GridLayoutEngine source) {
+        mRowCount = source.mRowCount;
+        mColumnCount = source.mColumnCount;
+        mPaddingLeft = source.mPaddingLeft;
+        mPaddingTop = source.mPaddingTop;
+        mPaddingRight = source.mPaddingRight;
+        mPaddingBottom = source.mPaddingBottom;
+        mItemSpaceHorizontal = source.mItemSpaceHorizontal;
+        mItemSpaceVertical = source.mItemSpaceVertical;
+
+        if (source.mColumnTypes != null) {
+            mColumnTypes = source.mColumnTypes.clone();
+            mColumnValues = source.mColumnValues.clone();
+        } else {
+            mColumnTypes = null;
+            mColumnValues = null;
+        }
+        if (source.mRowTypes != null) {
+            mRowTypes = source.mRowTypes.clone();
+            mRowValues = source.mRowValues.clone();
+        } else {
+            mRowTypes = null;
+            mRowValues = null;
+        }
+        mLinesDirty = true;
+    }
+
+    /**
+     * Convert a cell index or span to fixed point.
+     */
+    public static int toCellFixed(float value) {
+        return Math.round(value * CELL_ONE);
+    }
+
+    public static float fromCellFixed(int value) {
+        return (float) value / CELL_ONE;
+    }
+
+    /**
+     * @return the first track a fixed point cell touches
+     */
+    public static int firstTrack(int index) {
+        return Math.max(0, index >> CELL_FRACTION_BITS);
+    }
+
+    /**
+     * @return one past the last track a fixed point cell touches
+     */
+    public static int endTrack(int index, int spec) {
+        return Math.max(firstTrack(index) + 1,
+                (index + spec + CELL_ONE - 1) >> CELL_FRACTION_BITS);
+    }
+
+    public static int makeMeasureSpec(int size, int mode) {
+        return (size & ~MODE_MASK) | (mode & MODE_MASK);
+    }
+
+    public static int getMode(int measureSpec) {
+        return measureSpec & MODE_MASK;
+    }
+
+    public static int getSize(int measureSpec) {
+        return measureSpec & ~MODE_MASK;
+    }
+
+    /**
+     * Build the spec a child gets for one axis, given its layout size and the
+     * size its cells provide.
+     */
+    public static int makeChildMeasureSpec(int childSize, int provideSize) {
+        if (childSize > 0) {
+            return makeMeasureSpec(childSize, EXACTLY);
+        } else if (childSize == MATCH_PARENT) {
+            return makeMeasureSpec(provideSize, EXACTLY);
+        } else {
+            return makeMeasureSpec(provideSize, AT_MOST);
+        }
+    }
+
+    /**
+     * Specs a child gets under a scale policy, chosen so one measure gives its
+     * final size whenever the policy and params allow. A child with a fixed
+     * width and height is fitted up front; with {@link #SCALE_FIT} a fixed
+     * size larger than its cells becomes an AT_MOST of what they provide.
+     *
+     * @param outSpecs receives the width and the height spec
+     */
+    public static void makeChildMeasureSpecs(int childWidth, int childHeight,
+            int widthProvide, int heightProvide, int policy, int[] outSpecs,
+            int offset) {
+        if (policy == SCALE_FILL) {
+            outSpecs[offset] = makeMeasureSpec(widthProvide, EXACTLY);
+            outSpecs[offset + 1] = makeMeasureSpec(heightProvide, EXACTLY);
+            return;
+        }
+
+        if (policy == SCALE_FIT && childWidth > 0 && childHeight > 0) {
+            // The aspect is known, fit it without asking the child
+            outSpecs[offset] = childWidth;
+            outSpecs[offset + 1] = childHeight;
+            fitToCell(outSpecs, offset, widthProvide, heightProvide);
+            outSpecs[offset] = makeMeasureSpec(outSpecs[offset], EXACTLY);
+            outSpecs[offset + 1] = makeMeasureSpec(outSpecs[offset + 1],
+                    EXACTLY);
+            return;
+        }
+
+        if (policy == SCALE_FIT) {
+            outSpecs[offset] = childWidth > widthProvide ? makeMeasureSpec(
+                    widthProvide, AT_MOST) : makeChildMeasureSpec(childWidth,
+                    widthProvide);
+            outSpecs[offset + 1] = childHeight > heightProvide
+                    ? makeMeasureSpec(heightProvide, AT_MOST)
+                    : makeChildMeasureSpec(childHeight, heightProvide);
+            return;
+        }
+
+        outSpecs[offset] = makeChildMeasureSpec(childWidth, widthProvide);
+        outSpecs[offset + 1] = makeChildMeasureSpec(childHeight, heightProvide);
+    }
+
+    /**
+     * Spec a child gets on an axis whose tracks are sized to their content.
+     *
+     * @param parentMode mode of the parent on that axis
+     * @param available content size the parent may not exceed, unless
+     *            UNSPECIFIED
+     */
+    public static int makeIntrinsicMeasureSpec(int childSize, int parentMode,
+            int available) {
+        if (childSize >= 0) {
+            return makeMeasureSpec(childSize, EXACTLY);
+        }
+
+        if (parentMode != UNSPECIFIED) {
+            return makeMeasureSpec(Math.max(0, available), AT_MOST);
+        }
+
+        return makeMeasureSpec(0, UNSPECIFIED);
+    }
+
+    /**
+     * Whether a child measured with oldSpec, coming out at measuredSize,
+     * would come out the same with newSpec. Besides equal specs, that is a
+     * child that fit under a looser limit and still fits under the new one,
+     * which is the contract of wrap-content measuring.
+     */
+    public static boolean isMeasureReusable(int oldSpec, int newSpec,
+            int measuredSize) {
+        if (oldSpec == newSpec) {
+            return true;
+        }
+
+        if (getMode(newSpec) != AT_MOST || measuredSize > getSize(newSpec)) {
+            return false;
+        }
+
+        final int oldMode = getMode(oldSpec);
+        return oldMode == UNSPECIFIED
+                || (oldMode == AT_MOST && getSize(oldSpec) >= getSize(newSpec));
+    }
+
+    /**
+     * Size a child with the given intrinsic size reports for a spec, following
+     * the usual {@code View.resolveSize} contract.
+     */
+    public static int resolveSize(int desiredSize, int measureSpec) {
+        final int size = getSize(measureSpec);
+
+        switch (getMode(measureSpec)) {
+            case EXACTLY:
+                return size;
+            case AT_MOST:
+                return desiredSize < size ? desiredSize : size;
+            default:
+                return desiredSize;
+        }
+    }
+
+    public void setRowCount(int count) {
+        mRowCount = count;
+        mLinesDirty = true;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public void setColumnCount(int count) {
+        mColumnCount = count;
+        mLinesDirty = true;
+    }
+
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    public void setPadding(int left, int top, int right, int bottom) {
+        mPaddingLeft = left;
+        mPaddingTop = top;
+        mPaddingRight = right;
+        mPaddingBottom = bottom;
+        mLinesDirty = true;
+    }
+
+    public void setItemHorizontalSpace(int space) {
+        mItemSpaceHorizontal = space;
+        mLinesDirty = true;
+    }
+
+    public int getItemHorizontalSpace() {
+        return mItemSpaceHorizontal;
+    }
+
+    public void setItemVerticalSpace(int space) {
+        mItemSpaceVertical = space;
+        mLinesDirty = true;
+    }
+
+    public int getItemVerticalSpace() {
+        return mItemSpaceVertical;
+    }
+
+    public int getColumnWidth() {
+        return mColumnWith;
+    }
+
+    public int getRowHeight() {
+        return mRowHeight;
+    }
+
+    public int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    public int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+
+    /**
+     * Define how a column is sized.
+     *
+     * @param type {@link #TRACK_WEIGHT}, {@link #TRACK_FIXED} or
+     *            {@link #TRACK_WRAP}
+     * @param value the weight, the size in px, or ignored for wrap
+     */
+    public void setColumnTrack(int column, int type, float value) {
+        if (mColumnTypes == null || mColumnTypes.length <= column) {
+            mColumnTypes = growTypes(mColumnTypes, column + 1);
+            mColumnValues = growValues(mColumnValues, column + 1);
+        }
+
+        mColumnTypes[column] = type;
+        mColumnValues[column] = value;
+        mLinesDirty = true;
+    }
+
+    /**
+     * Define how a row is sized, see {@link #setColumnTrack(int, int, float)}.
+     */
+    public void setRowTrack(int row, int type, float value) {
+        if (mRowTypes == null || mRowTypes.length <= row) {
+            mRowTypes = growTypes(mRowTypes, row + 1);
+            mRowValues = growValues(mRowValues, row + 1);
+        }
+
+        mRowTypes[row] = type;
+        mRowValues[row] = value;
+        mLinesDirty = true;
+    }
+
+    /**
+     * Give every column a weight of 1 again.
+     */
+    public void clearColumnTracks() {
+        mColumnTypes = null;
+        mColumnValues = null;
+        mLinesDirty = true;
+    }
+
+    /**
+     * Give every row a weight of 1 again.
+     */
+    public void clearRowTracks() {
+        mRowTypes = null;
+        mRowValues = null;
+        mLinesDirty = true;
+    }
+
+    public int getColumnTrackType(int column) {
+        return typeOf(mColumnTypes, column);
+    }
+
+    public float getColumnTrackValue(int column) {
+        return valueOf(mColumnValues, column);
+    }
+
+    public int getRowTrackType(int row) {
+        return typeOf(mRowTypes, row);
+    }
+
+    public float getRowTrackValue(int row) {
+        return valueOf(mRowValues, row);
+    }
+
+    private static int typeOf(int[] types, int track) {
+        return types == null || track >= types.length ? TRACK_WEIGHT
+                : types[track];
+    }
+
+    private static float valueOf(float[] values, int track) {
+        return values == null || track >= values.length ? 1 : values[track];
+    }
+
+    private static int[] growTypes(int[] types, int size) {
+        final int[] grown = new int[size];
+        if (types != null) {
+            System.arraycopy(types, 0, grown, 0, types.length);
+        }
+
+        return grown;
+    }
+
+    private static float[] growValues(float[] values, int size) {
+        final float[] grown = new float[size];
+        final int kept = values == null ? 0 : values.length;
+        if (kept > 0) {
+            System.arraycopy(values, 0, grown, 0, kept);
+        }
+        for (int i = kept; i < size; i++) {
+            grown[i] = 1;
+        }
+
+        return grown;
+    }
+
+    /**
+     * @return true if the columns can only be sized after measuring the
+     *         children, for the given width mode
+     */
+    public boolean columnsNeedContent(int widthMode) {
+        return widthMode != EXACTLY || hasWrapTrack(mColumnTypes, mColumnCount);
+    }
+
+    /**
+     * @return true if the rows can only be sized after measuring the
+     *         children, for the given height mode
+     */
+    public boolean rowsNeedContent(int heightMode) {
+        return heightMode != EXACTLY || hasWrapTrack(mRowTypes, mRowCount);
+    }
+
+    private static boolean hasWrapTrack(int[] types, int count) {
+        for (int i = 0; i < count; i++) {
+            if (typeOf(types, i) == TRACK_WRAP) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Derive the track sizes from the size offered by the parent, without
+     * looking at any child.
+     */
+    public void resolveTracks(int widthSize, int heightSize) {
+        resolveColumns(widthSize);
+        resolveRows(heightSize);
+    }
+
+    /**
+     * Size fixed columns, then share the rest of the width offered by the
+     * parent between the weighted ones. Wrap columns get nothing.
+     */
+    public void resolveColumns(int widthSize) {
+        mColumnSizes = ensureTracks(mColumnSizes, mColumnCount);
+        mColumnWith = flexTracks(mColumnSizes, mColumnCount, mColumnTypes,
+                mColumnValues, getColumnSpace(widthSize), false);
+        mLinesDirty = true;
+    }
+
+    /**
+     * Size fixed rows, then share the rest of the height offered by the
+     * parent between the weighted ones. Wrap rows get nothing.
+     */
+    public void resolveRows(int heightSize) {
+        mRowSizes = ensureTracks(mRowSizes, mRowCount);
+        mRowHeight = flexTracks(mRowSizes, mRowCount, mRowTypes, mRowValues,
+                getRowSpace(heightSize), false);
+        mLinesDirty = true;
+    }
+
+    private int getColumnSpace(int widthSize) {
+        return widthSize - mPaddingLeft - mPaddingRight - (mColumnCount - 1)
+                * mItemSpaceHorizontal;
+    }
+
+    private int getRowSpace(int heightSize) {
+        return heightSize - mPaddingTop - mPaddingBottom - (mRowCount - 1)
+                * mItemSpaceVertical;
+    }
+
+    /**
+     * Give every row the same fixed height, whatever the parent offers.
+     */
+    public void setRowHeight(int height) {
+        mRowHeight = height;
+        mRowSizes = fillTracks(mRowSizes, mRowCount, height, 0);
+        mLinesDirty = true;
+    }
+
+    public int getColumnWidth(int column) {
+        return mColumnSizes[column];
+    }
+
+    public int getRowHeight(int row) {
+        return mRowSizes[row];
+    }
+
+    /**
+     * Take track sizes solved earlier, e.g. from a {@link GridSnapshot},
+     * instead of resolving or solving them.
+     */
+    public void setTrackSizes(int[] columnSizes, int[] rowSizes) {
+        mColumnSizes = ensureTracks(mColumnSizes, mColumnCount);
+        System.arraycopy(columnSizes, 0, mColumnSizes, 0, mColumnCount);
+        mColumnWith = largestTrack(mColumnSizes, mColumnCount);
+
+        mRowSizes = ensureTracks(mRowSizes, mRowCount);
+        System.arraycopy(rowSizes, 0, mRowSizes, 0, mRowCount);
+        mRowHeight = largestTrack(mRowSizes, mRowCount);
+        mLinesDirty = true;
+    }
+
+    /**
+     * Hash of everything set on this engine that shapes the tracks: counts,
+     * padding, spaces and track definitions.
+     */
+    public int configHashCode() {
+        int result = mRowCount;
+        result = 31 * result + mColumnCount;
+        result = 31 * result + mPaddingLeft;
+        result = 31 * result + mPaddingTop;
+        result = 31 * result + mPaddingRight;
+        result = 31 * result + mPaddingBottom;
+        result = 31 * result + mItemSpaceHorizontal;
+        result = 31 * result + mItemSpaceVertical;
+        for (int i = 0; i < mColumnCount; i++) {
+            result = 31 * result + getColumnTrackType(i);
+            result = 31 * result + Float.floatToIntBits(getColumnTrackValue(i));
+        }
+        for (int i = 0; i < mRowCount; i++) {
+            result = 31 * result + getRowTrackType(i);
+            result = 31 * result + Float.floatToIntBits(getRowTrackValue(i));
+        }
+
+        return result;
+    }
+
+    private static int[] ensureTracks(int[] tracks, int count) {
+        return tracks.length < count ? new int[count] : tracks;
+    }
+
+    private static int[] fillTracks(int[] tracks, int count, int size,
+            int remainder) {
+        tracks = ensureTracks(tracks, count);
+        for (int i = 0; i < count; i++) {
+            tracks[i] = size + (i < remainder ? 1 : 0);
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Size fixed tracks, then share what they leave of space between the
+     * weighted tracks. Pixels lost to rounding go one each to the first
+     * weighted tracks, so the tracks fill the space exactly.
+     *
+     * @param keepContent whether wrap tracks keep the size they hold, or get
+     *            nothing
+     * @return the size of one unit of weight
+     */
+    private static int flexTracks(int[] tracks, int count, int[] types,
+            float[] values, int space, boolean keepContent) {
+        if (types == null) {
+            // Every track has a weight of 1
+            final int size = space / count;
+            fillTracks(tracks, count, size, space - size * count);
+            return size;
+        }
+
+        int used = 0;
+        float totalWeight = 0;
+        for (int i = 0; i < count; i++) {
+            switch (typeOf(types, i)) {
+                case TRACK_FIXED:
+                    tracks[i] = Math.round(valueOf(values, i));
+                    used += tracks[i];
+                    break;
+                case TRACK_WRAP:
+                    if (!keepContent) {
+                        tracks[i] = 0;
+                    }
+                    used += tracks[i];
+                    break;
+                default:
+                    totalWeight += Math.max(0, valueOf(values, i));
+                    break;
+            }
+        }
+
+        if (totalWeight <= 0) {
+            for (int i = 0; i < count; i++) {
+                if (typeOf(types, i) == TRACK_WEIGHT) {
+                    tracks[i] = 0;
+                }
+            }
+            return 0;
+        }
+
+        final int left = Math.max(0, space - used);
+        int given = 0;
+        for (int i = 0; i < count; i++) {
+            if (typeOf(types, i) == TRACK_WEIGHT) {
+                tracks[i] = (int) (left * Math.max(0, valueOf(values, i))
+                        / totalWeight);
+                given += tracks[i];
+            }
+        }
+
+        for (int i = 0; i < count && given < left; i++) {
+            if (typeOf(types, i) == TRACK_WEIGHT && valueOf(values, i) > 0) {
+                tracks[i]++;
+                given++;
+            }
+        }
+
+        return (int) (left / totalWeight);
+    }
+
+    /**
+     * Size every column that is not fixed to the widest content it holds,
+     * from measured children. A child on one column sets it directly; a
+     * child spanning several columns only grows them, evenly, by what they
+     * still miss. Shorter spans are handled first, so long spans see the
+     * final sizes of the columns they cover.
+     *
+     * @param cells packed cell specs
+     * @param sizes packed measured sizes
+     */
+    public void solveColumns(int count, int[] cells, int[] sizes) {
+        mColumnSizes = solveTracks(mColumnSizes, mColumnCount, mColumnTypes,
+                mColumnValues, true, count, cells, CELL_COLUMN_INDEX,
+                CELL_COLUMN_SPEC, sizes, 0, mItemSpaceHorizontal);
+        mColumnWith = largestTrack(mColumnSizes, mColumnCount);
+        mLinesDirty = true;
+    }
+
+    /**
+     * Size every row that is not fixed to the tallest content it holds, see
+     * {@link #solveColumns(int, int[], int[])}.
+     */
+    public void solveRows(int count, int[] cells, int[] sizes) {
+        mRowSizes = solveTracks(mRowSizes, mRowCount, mRowTypes, mRowValues,
+                true, count, cells, CELL_ROW_INDEX, CELL_ROW_SPEC, sizes, 1,
+                mItemSpaceVertical);
+        mRowHeight = largestTrack(mRowSizes, mRowCount);
+        mLinesDirty = true;
+    }
+
+    /**
+     * @param weightsByContent whether weighted tracks are sized to content
+     *            like wrap ones, or left for {@link #flexTracks}
+     */
+    private static int[] solveTracks(int[] tracks, int trackCount,
+            int[] types, float[] values, boolean weightsByContent, int count,
+            int[] cells, int indexAt, int specAt, int[] sizes, int sizeAt,
+            int space) {
+        tracks = ensureTracks(tracks, trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            tracks[i] = typeOf(types, i) == TRACK_FIXED ? Math.round(valueOf(
+                    values, i)) : 0;
+        }
+
+        int maxSpan = 1;
+        for (int i = 0; i < count; i++) {
+            final int c = i * CELL_STRIDE;
+            final int first = firstTrack(cells[c + indexAt]);
+            final int span = Math.min(trackCount, endTrack(cells[c + indexAt],
+                    cells[c + specAt])) - first;
+            if (span == 1) {
+                if (!isContentTrack(types, first, weightsByContent)) {
+                    continue;
+                }
+
+                final int need = needOfSpan(sizes[i * SIZE_STRIDE + sizeAt],
+                        cells[c + specAt], 1);
+                if (tracks[first] < need) {
+                    tracks[first] = need;
+                }
+            } else if (span > maxSpan) {
+                maxSpan = span;
+            }
+        }
+
+        for (int span = 2; span <= maxSpan; span++) {
+            for (int i = 0; i < count; i++) {
+                final int c = i * CELL_STRIDE;
+                final int first = firstTrack(cells[c + indexAt]);
+                final int end = Math.min(trackCount, endTrack(
+                        cells[c + indexAt], cells[c + specAt]));
+                if (end - first != span) {
+                    continue;
+                }
+
+                int have = (span - 1) * space;
+                int growable = 0;
+                for (int t = first; t < end; t++) {
+                    have += tracks[t];
+                    if (isContentTrack(types, t, weightsByContent)) {
+                        growable++;
+                    }
+                }
+
+                final int missing = needOfSpan(sizes[i * SIZE_STRIDE + sizeAt],
+                        cells[c + specAt], span) - have;
+                if (missing <= 0 || growable == 0) {
+                    continue;
+                }
+
+                // Only the tracks sized by content grow
+                final int share = missing / growable;
+                int remainder = missing - share * growable;
+                for (int t = first; t < end; t++) {
+                    if (isContentTrack(types, t, weightsByContent)) {
+                        tracks[t] += share + (remainder > 0 ? 1 : 0);
+                        remainder--;
+                    }
+                }
+            }
+        }
+
+        return tracks;
+    }
+
+    private static boolean isContentTrack(int[] types, int track,
+            boolean weightsByContent) {
+        final int type = typeOf(types, track);
+        return type == TRACK_WRAP || (weightsByContent && type == TRACK_WEIGHT);
+    }
+
+    /**
+     * Size the whole tracks under a cell must add up to, so a child on only
+     * part of them still gets its size.
+     */
+    private static int needOfSpan(int size, int spec, int span) {
+        final long whole = (long) span * CELL_ONE;
+        if (spec <= 0 || spec >= whole) {
+            return size;
+        }
+
+        return (int) ((size * whole + spec - 1) / spec);
+    }
+
+    private static int largestTrack(int[] tracks, int count) {
+        int largest = 0;
+        for (int i = 0; i < count; i++) {
+            largest = Math.max(largest, tracks[i]);
+        }
+
+        return largest;
+    }
+
+    /**
+     * Remember the track geometry of this pass.
+     *
+     * @return true if any track moved or resized since the last commit
+     */
+    public boolean commitTracks() {
+        ensureLines();
+
+        boolean changed = false;
+        if (!sameLines(mColumnLines, mColumnCount, mCommittedColumnLines)) {
+            mCommittedColumnLines = copyLines(mColumnLines, mColumnCount,
+                    mCommittedColumnLines);
+            changed = true;
+        }
+        if (!sameLines(mRowLines, mRowCount, mCommittedRowLines)) {
+            mCommittedRowLines = copyLines(mRowLines, mRowCount,
+                    mCommittedRowLines);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static boolean sameLines(int[] lines, int count, int[] committed) {
+        if (committed.length != count + 1) {
+            return false;
+        }
+
+        for (int i = 0; i <= count; i++) {
+            if (lines[i] != committed[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int[] copyLines(int[] lines, int count, int[] committed) {
+        if (committed.length != count + 1) {
+            committed = new int[count + 1];
+        }
+
+        System.arraycopy(lines, 0, committed, 0, count + 1);
+        return committed;
+    }
+
+    /**
+     * Rebuild the grid lines if any track changed since they were built.
+     */
+    private void ensureLines() {
+        if (!mLinesDirty) {
+            return;
+        }
+
+        if (mColumnLines.length != mColumnCount + 1) {
+            mColumnLines = new int[mColumnCount + 1];
+        }
+        if (mRowLines.length != mRowCount + 1) {
+            mRowLines = new int[mRowCount + 1];
+        }
+        if (mColumnSizes.length < mColumnCount) {
+            mColumnSizes = fillTracks(mColumnSizes, mColumnCount, mColumnWith, 0);
+        }
+        if (mRowSizes.length < mRowCount) {
+            mRowSizes = fillTracks(mRowSizes, mRowCount, mRowHeight, 0);
+        }
+
+        buildLines(mColumnLines, mColumnCount, mPaddingLeft, mColumnSizes,
+                mItemSpaceHorizontal);
+        buildLines(mRowLines, mRowCount, mPaddingTop, mRowSizes,
+                mItemSpaceVertical);
+        mLinesDirty = false;
+    }
+
+    private static void buildLines(int[] lines, int count, int start,
+            int[] sizes, int space) {
+        int line = start;
+        for (int i = 0; i < count; i++) {
+            lines[i] = line;
+            line += sizes[i] + space;
+        }
+        lines[count] = line;
+    }
+
+    /**
+     * Pixel position of a grid line, fractional lines are interpolated
+     * between their neighbours and rounded to the nearest pixel. Measure and
+     * layout both go through here, so cells sharing a fractional line share
+     * its pixel too.
+     */
+    private static int lineAt(int[] lines, int count, int index) {
+        if (index <= 0) {
+            return lines[0];
+        }
+
+        final int i = index >> CELL_FRACTION_BITS;
+        if (i >= count) {
+            return lines[count];
+        }
+
+        final int line = lines[i];
+        final int fraction = index & (CELL_ONE - 1);
+        if (fraction == 0) {
+            return line;
+        }
+
+        final int offset = (lines[i + 1] - line) * fraction + (CELL_ONE >> 1);
+        return line + (offset >> CELL_FRACTION_BITS);
+    }
+
+    /**
+     * @return the column whose span, or the space right after it, holds x,
+     *         or -1 if x is outside the tracks
+     */
+    public int findColumnAt(int x) {
+        ensureLines();
+        return findTrack(mColumnLines, mColumnCount, x);
+    }
+
+    /**
+     * @return the row whose span, or the space right after it, holds y, or
+     *         -1 if y is outside the tracks
+     */
+    public int findRowAt(int y) {
+        ensureLines();
+        return findTrack(mRowLines, mRowCount, y);
+    }
+
+    private static int findTrack(int[] lines, int count, int position) {
+        if (count <= 0 || position < lines[0] || position >= lines[count]) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (lines[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    public int getContentWidth() {
+        ensureLines();
+        return mColumnLines[mColumnCount] - mItemSpaceHorizontal
+                + mPaddingRight;
+    }
+
+    public int getContentHeight() {
+        ensureLines();
+        return mRowLines[mRowCount] - mItemSpaceVertical + mPaddingBottom;
+    }
+
+    /**
+     * Width provided by the columns of a cell, spaces included.
+     */
+    public int getSpanWidth(int columnIndex, int columnSpec) {
+        ensureLines();
+        return lineAt(mColumnLines, mColumnCount, columnIndex + columnSpec)
+                - mItemSpaceHorizontal
+                - lineAt(mColumnLines, mColumnCount, columnIndex);
+    }
+
+    /**
+     * Height provided by the rows of a cell, spaces included.
+     */
+    public int getSpanHeight(int rowIndex, int rowSpec) {
+        ensureLines();
+        return lineAt(mRowLines, mRowCount, rowIndex + rowSpec)
+                - mItemSpaceVertical - lineAt(mRowLines, mRowCount, rowIndex);
+    }
+
+    /**
+     * Bounds of the cells of a child, before gravity.
+     */
+    public void getCellRect(int[] cells, int cellOffset, int[] outRects,
+            int rectOffset) {
+        ensureLines();
+
+        final int rowIndex = cells[cellOffset + CELL_ROW_INDEX];
+        final int columnIndex = cells[cellOffset + CELL_COLUMN_INDEX];
+
+        outRects[rectOffset] = lineAt(mColumnLines, mColumnCount, columnIndex);
+        outRects[rectOffset + 1] = lineAt(mRowLines, mRowCount, rowIndex);
+        outRects[rectOffset + 2] = lineAt(mColumnLines, mColumnCount,
+                columnIndex + cells[cellOffset + CELL_COLUMN_SPEC])
+                - mItemSpaceHorizontal;
+        outRects[rectOffset + 3] = lineAt(mRowLines, mRowCount, rowIndex
+                + cells[cellOffset + CELL_ROW_SPEC])
+                - mItemSpaceVertical;
+    }
+
+    /**
+     * Scale a measured size down, keeping its aspect, so it fits the size
+     * provided by its cells. The axis that has to shrink most decides.
+     *
+     * @param size packed (width, height), updated in place
+     * @return true if the size had to be scaled
+     */
+    public static boolean fitToCell(int[] size, int offset, int widthProvide,
+            int heightProvide) {
+        int childWidth = size[offset];
+        int childHeight = size[offset + 1];
+
+        if (childWidth <= widthProvide && childHeight <= heightProvide) {
+            return false;
+        }
+
+        if (childWidth <= 0 || childHeight <= 0 || widthProvide <= 0
+                || heightProvide <= 0) {
+            // No aspect to keep, e.g. a collapsed child or cell: clamp
+            size[offset] = Math.max(0, Math.min(childWidth, widthProvide));
+            size[offset + 1] = Math.max(0, Math.min(childHeight,
+                    heightProvide));
+            return true;
+        }
+
+        // widthProvide / childWidth <= heightProvide / childHeight
+        if ((long) widthProvide * childHeight <= (long) heightProvide
+                * childWidth) {
+            // Width based
+            childHeight = (int) ((long) childHeight * widthProvide / childWidth);
+            childWidth = widthProvide;
+        } else {
+            // Height based
+            childWidth = (int) ((long) childWidth * heightProvide / childHeight);
+            childHeight = heightProvide;
+        }
+
+        size[offset] = childWidth;
+        size[offset + 1] = childHeight;
+        return true;
+    }
+
+    /**
+     * Clamp a cell so it starts inside the grid, spans at least one track
+     * and does not run past the last row or column.
+     *
+     * @return true if the cell was changed
+     */
+    public boolean clampCell(int[] cells, int offset) {
+        final boolean rowChanged = clampAxis(cells, offset + CELL_ROW_INDEX,
+                offset + CELL_ROW_SPEC, mRowCount);
+        final boolean columnChanged = clampAxis(cells, offset
+                + CELL_COLUMN_INDEX, offset + CELL_COLUMN_SPEC, mColumnCount);
+
+        return rowChanged || columnChanged;
+    }
+
+    private static boolean clampAxis(int[] cells, int indexAt, int specAt,
+            int count) {
+        final int lastIndex = (count - 1) * CELL_ONE;
+        final int index = cells[indexAt];
+        final int spec = cells[specAt];
+
+        int clampedIndex = index < 0 ? 0 : index > lastIndex ? lastIndex : index;
+        int clampedSpec = spec < CELL_ONE ? CELL_ONE : spec;
+        if (clampedIndex + clampedSpec > count * CELL_ONE) {
+            clampedSpec = count * CELL_ONE - clampedIndex;
+        }
+
+        if (clampedIndex == index && clampedSpec == spec) {
+            return false;
+        }
+
+        cells[indexAt] = clampedIndex;
+        cells[specAt] = clampedSpec;
+        return true;
+    }
+
+    /**
+     * Run a full measure pass without any View.
+     *
+     * @param cells packed cell specs
+     * @param params packed layout sizes (MATCH_PARENT, WRAP_CONTENT or px)
+     * @param desired packed intrinsic sizes each child would like
+     * @param outSizes packed measured sizes of each child
+     */
+    public void measure(int widthMeasureSpec, int heightMeasureSpec,
+            int count, int[] cells, int[] params, int[] desired,
+            int[] outSizes) {
+        int widthSize = getSize(widthMeasureSpec);
+        int heightSize = getSize(heightMeasureSpec);
+        final int widthMode = getMode(widthMeasureSpec);
+        final int heightMode = getMode(heightMeasureSpec);
+
+        // Axes not fixed by the parent, or with wrap tracks, need content
+        final boolean widthIntrinsic = mColumnCount > 0
+                && columnsNeedContent(widthMode);
+        final boolean heightIntrinsic = mRowCount > 0
+                && rowsNeedContent(heightMode);
+        if (!widthIntrinsic) {
+            resolveColumns(widthSize);
+        }
+        if (!heightIntrinsic) {
+            resolveRows(heightSize);
+        }
+
+        if (widthIntrinsic || heightIntrinsic) {
+            final int availableWidth = widthSize - mPaddingLeft - mPaddingRight;
+            final int availableHeight = heightSize - mPaddingTop
+                    - mPaddingBottom;
+
+            for (int i = 0; i < count; i++) {
+                final int c = i * CELL_STRIDE;
+                final int s = i * SIZE_STRIDE;
+
+                outSizes[s] = resolveSize(desired[s], widthIntrinsic
+                        ? makeIntrinsicMeasureSpec(params[s], widthMode,
+                                availableWidth)
+                        : makeChildMeasureSpec(params[s], getSpanWidth(
+                                cells[c + CELL_COLUMN_INDEX],
+                                cells[c + CELL_COLUMN_SPEC])));
+                outSizes[s + 1] = resolveSize(desired[s + 1], heightIntrinsic
+                        ? makeIntrinsicMeasureSpec(params[s + 1], heightMode,
+                                availableHeight)
+                        : makeChildMeasureSpec(params[s + 1], getSpanHeight(
+                                cells[c + CELL_ROW_INDEX],
+                                cells[c + CELL_ROW_SPEC])));
+            }
+
+            if (widthIntrinsic) {
+                widthSize = solveIntrinsicWidth(count, cells, outSizes,
+                        widthMode, widthSize);
+            }
+            if (heightIntrinsic) {
+                heightSize = solveIntrinsicHeight(count, cells, outSizes,
+                        heightMode, heightSize);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            final int c = i * CELL_STRIDE;
+            final int s = i * SIZE_STRIDE;
+
+            final int heightProvide = getSpanHeight(cells[c + CELL_ROW_INDEX],
+                    cells[c + CELL_ROW_SPEC]);
+            final int widthProvide = getSpanWidth(cells[c + CELL_COLUMN_INDEX],
+                    cells[c + CELL_COLUMN_SPEC]);
+
+            final int[] specs = mChildSpecs;
+            makeChildMeasureSpecs(params[s], params[s + 1], widthProvide,
+                    heightProvide, SCALE_FIT, specs, 0);
+            outSizes[s] = resolveSize(desired[s], specs[0]);
+            outSizes[s + 1] = resolveSize(desired[s + 1], specs[1]);
+
+            fitToCell(outSizes, s, widthProvide, heightProvide);
+        }
+
+        mMeasuredWidth = widthSize;
+        mMeasuredHeight = heightSize;
+    }
+
+    /**
+     * Size the columns from the intrinsic sizes of the children. Unless the
+     * parent fixes the width, every column that is not fixed wraps its
+     * content. With EXACTLY, or AT_MOST and content wider than the limit,
+     * only wrap columns do and the weighted ones share the rest.
+     *
+     * @return the width the grid takes
+     */
+    public int solveIntrinsicWidth(int count, int[] cells, int[] sizes,
+            int widthMode, int widthSize) {
+        if (widthMode != EXACTLY) {
+            solveColumns(count, cells, sizes);
+            if (widthMode != AT_MOST || getContentWidth() <= widthSize) {
+                return getContentWidth();
+            }
+        }
+
+        mColumnSizes = solveTracks(mColumnSizes, mColumnCount, mColumnTypes,
+                mColumnValues, false, count, cells, CELL_COLUMN_INDEX,
+                CELL_COLUMN_SPEC, sizes, 0, mItemSpaceHorizontal);
+        mColumnWith = flexTracks(mColumnSizes, mColumnCount, mColumnTypes,
+                mColumnValues, getColumnSpace(widthSize), true);
+        mLinesDirty = true;
+        return widthSize;
+    }
+
+    /**
+     * Size the rows from the intrinsic sizes of the children, see
+     * {@link #solveIntrinsicWidth(int, int[], int[], int, int)}.
+     *
+     * @return the height the grid takes
+     */
+    public int solveIntrinsicHeight(int count, int[] cells, int[] sizes,
+            int heightMode, int heightSize) {
+        if (heightMode != EXACTLY) {
+            solveRows(count, cells, sizes);
+            if (heightMode != AT_MOST || getContentHeight() <= heightSize) {
+                return getContentHeight();
+            }
+        }
+
+        mRowSizes = solveTracks(mRowSizes, mRowCount, mRowTypes, mRowValues,
+                false, count, cells, CELL_ROW_INDEX, CELL_ROW_SPEC, sizes, 1,
+                mItemSpaceVertical);
+        mRowHeight = flexTracks(mRowSizes, mRowCount, mRowTypes, mRowValues,
+                getRowSpace(heightSize), true);
+        mLinesDirty = true;
+        return heightSize;
+    }
+
+    /**
+     * Position every measured child inside its cells.
+     *
+     * @param cells packed cell specs
+     * @param gravities gravity of each child
+     * @param sizes packed measured sizes
+     * @param outRects packed rects of each child
+     */
+    public void layout(int count, int[] cells, int[] gravities,
+            int[] sizes, int[] outRects) {
+        for (int i = 0; i < count; i++) {
+            final int s = i * SIZE_STRIDE;
+            layoutCell(cells, i * CELL_STRIDE, gravities[i], sizes[s],
+                    sizes[s + 1], outRects, i * RECT_STRIDE);
+        }
+    }
+
+    /**
+     * Position one measured child inside its cells.
+     */
+    public void layoutCell(int[] cells, int cellOffset, int gravity,
+            int childWidth, int childHeight, int[] outRects, int rectOffset) {
+        getCellRect(cells, cellOffset, outRects, rectOffset);
+
+        final int cellLeft = outRects[rectOffset];
+        final int cellTop = outRects[rectOffset + 1];
+        final int cellRight = outRects[rectOffset + 2];
+        final int cellBottom = outRects[rectOffset + 3];
+
+        final int layoutLeft;
+        switch (gravity & GRAVITY_HORIZONTAL_MASK) {
+            case GRAVITY_RIGHT:
+                layoutLeft = cellRight - childWidth;
+                break;
+            case GRAVITY_CENTER_HORIZONTAL:
+                layoutLeft = cellLeft + (cellRight - cellLeft - childWidth) / 2;
+                break;
+            default:
+                layoutLeft = cellLeft;
+                break;
+        }
+
+        final int layoutTop;
+        switch (gravity & GRAVITY_VERTICAL_MASK) {
+            case GRAVITY_BOTTOM:
+                layoutTop = cellBottom - childHeight;
+                break;
+            case GRAVITY_CENTER_VERTICAL:
+                layoutTop = cellTop + (cellBottom - cellTop - childHeight) / 2;
+                break;
+            default:
+                layoutTop = cellTop;
+                break;
+        }
+
+        outRects[rectOffset] = layoutLeft;
+        outRects[rectOffset + 1] = layoutTop;
+        outRects[rectOffset + 2] = layoutLeft + childWidth;
+        outRects[rectOffset + 3] = layoutTop + childHeight;
+    }
+}
@@ -0,0 +1,187 @@
+package com.dolphin.gridlayout;
+
+/**
+ * Solves a whole grid from known item sizes, away from the UI thread:
+ * placement, tracks and the bounds of every item, into an immutable
+ * {@link GridSnapshot} that {@link DolphinGridLayout#applySolvedLayout}
+ * applies with one exact measure and one layout per child.
+ * <p>
+ * Everything is copied when the solver is built, so the caller may change
+ * its arrays and its grid right after. Items are fitted to their cells like
+ * {@link GridLayoutEngine#SCALE_FIT}. Pure Java like
+ * {@link GridLayoutEngine}.
+ *
+ * @author dolphinWang
+ */
+public final class GridLayoutSolver {
+
+    private final GridLayoutEngine mEngine;
+    private final int mAutoFlow;
+    private final int mCount;
+
+    /**
+     * Per item rowIndex, rowSpec, columnIndex and columnSpec as in
+     * {@link DolphinGridLayout.LayoutParams}, a negative index to auto-place.
+     */
+    private final float[] mCellParams;
+    private final int[] mParams;
+    private final int[] mDesired;
+    private final int[] mGravities;
+
+    /**
+     * @param engine setup of the grid, copied
+     * @param autoFlow 0, or the {@link GridOccupancy} flow flags, same as
+     *            the AUTO_FLOW_ values of {@link DolphinGridLayout}
+     * @param cellParams packed rowIndex, rowSpec, columnIndex, columnSpec
+     * @param params packed layout width and height of each item
+     * @param desired packed size each item measures to when unconstrained
+     * @param gravities gravity of each item
+     */
+    public GridLayoutSolver(GridLayoutEngine engine, int autoFlow, int count,
+            float[] cellParams, int[] params, int[] desired, int[] gravities) {
+        if (count < 0 || cellParams.length < count * 4
+                || params.length < count * GridLayoutEngine.SIZE_STRIDE
+                || desired.length < count * GridLayoutEngine.SIZE_STRIDE
+                || gravities.length < count) {
+            throw new IllegalArgumentException("Arrays too short for " + count
+                    + " items.");
+        }
+
+        mEngine = new GridLayoutEngine(engine);
+        mAutoFlow = autoFlow;
+        mCount = count;
+        mCellParams = copyOf(cellParams, count * 4);
+        mParams = copyOf(params, count * GridLayoutEngine.SIZE_STRIDE);
+        mDesired = copyOf(desired, count * GridLayoutEngine.SIZE_STRIDE);
+        mGravities = copyOf(gravities, count);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Solve the grid for the given measure specs. Safe on any thread, but not
+     * on two at once for the same solver.
+     */
+    public GridSnapshot solve(int widthMeasureSpec, int heightMeasureSpec) {
+        final GridLayoutEngine engine = mEngine;
+        final int count = mCount;
+
+        final int[] cells = new int[count * GridLayoutEngine.CELL_STRIDE];
+        for (int i = 0; i < count; i++) {
+            final int p = i * 4;
+            final int c = i * GridLayoutEngine.CELL_STRIDE;
+            cells[c + GridLayoutEngine.CELL_ROW_INDEX] = mCellParams[p] < 0 ? 0
+                    : GridLayoutEngine.toCellFixed(mCellParams[p]);
+            cells[c + GridLayoutEngine.CELL_ROW_SPEC] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p + 1]);
+            cells[c + GridLayoutEngine.CELL_COLUMN_INDEX] = mCellParams[p + 2] < 0 ? 0
+                    : GridLayoutEngine.toCellFixed(mCellParams[p + 2]);
+            cells[c + GridLayoutEngine.CELL_COLUMN_SPEC] = GridLayoutEngine
+                    .toCellFixed(mCellParams[p + 3]);
+            engine.clampCell(cells, c);
+        }
+
+        if (mAutoFlow != 0) {
+            place(cells);
+        }
+
+        final int[] sizes = new int[count * GridLayoutEngine.SIZE_STRIDE];
+        final int[] rects = new int[count * GridLayoutEngine.RECT_STRIDE];
+        engine.measure(widthMeasureSpec, heightMeasureSpec, count, cells,
+                mParams, mDesired, sizes);
+        engine.layout(count, cells, mGravities, sizes, rects);
+
+        final int[] columnSizes = new int[engine.getColumnCount()];
+        for (int i = 0; i < columnSizes.length; i++) {
+            columnSizes[i] = engine.getColumnWidth(i);
+        }
+        final int[] rowSizes = new int[engine.getRowCount()];
+        for (int i = 0; i < rowSizes.length; i++) {
+            rowSizes[i] = engine.getRowHeight(i);
+        }
+
+        return new GridSnapshot(widthMeasureSpec, heightMeasureSpec, 0,
+                engine.getMeasuredWidth(), engine.getMeasuredHeight(),
+                columnSizes, rowSizes, count, cells, rects);
+    }
+
+    /**
+     * Auto-place like the grid does: fixed items first, then the others in
+     * order around them.
+     */
+    private void place(int[] cells) {
+        final GridLayoutEngine engine = mEngine;
+        final GridOccupancy occupancy = new GridOccupancy();
+        occupancy.reset(engine.getRowCount(), engine.getColumnCount());
+
+        for (int i = 0; i < mCount; i++) {
+            if (isAutoPlaced(i)) {
+                continue;
+            }
+
+            final int c = i * GridLayoutEngine.CELL_STRIDE;
+            occupancy.occupy(firstTrack(cells, c, true),
+                    firstTrack(cells, c, false), span(cells, c, true),
+                    span(cells, c, false));
+        }
+
+        final int[] placement = new int[2];
+        for (int i = 0; i < mCount; i++) {
+            if (!isAutoPlaced(i)) {
+                continue;
+            }
+
+            final int c = i * GridLayoutEngine.CELL_STRIDE;
+            final int rowSpan = GridLayoutEngine.endTrack(0,
+                    cells[c + GridLayoutEngine.CELL_ROW_SPEC]);
+            final int columnSpan = GridLayoutEngine.endTrack(0,
+                    cells[c + GridLayoutEngine.CELL_COLUMN_SPEC]);
+            if (!occupancy.place(mCellParams[i * 4] < 0 ? -1 : firstTrack(
+                    cells, c, true), mCellParams[i * 4 + 2] < 0 ? -1
+                    : firstTrack(cells, c, false), rowSpan, columnSpan,
+                    mAutoFlow, placement)) {
+                occupancy.occupy(firstTrack(cells, c, true),
+                        firstTrack(cells, c, false), rowSpan, columnSpan);
+                continue;
+            }
+
+            cells[c + GridLayoutEngine.CELL_ROW_INDEX] = placement[0]
+                    * GridLayoutEngine.CELL_ONE;
+            cells[c + GridLayoutEngine.CELL_COLUMN_INDEX] = placement[1]
+                    * GridLayoutEngine.CELL_ONE;
+        }
+    }
+
+    private boolean isAutoPlaced(int item) {
+        return mCellParams[item * 4] < 0 || mCellParams[item * 4 + 2] < 0;
+    }
+
+    private static int firstTrack(int[] cells, int c, boolean row) {
+        return GridLayoutEngine.firstTrack(cells[c
+                + (row ? GridLayoutEngine.CELL_ROW_INDEX
+                        : GridLayoutEngine.CELL_COLUMN_INDEX)]);
+    }
+
+    private static int span(int[] cells, int c, boolean row) {
+        final int index = row ? GridLayoutEngine.CELL_ROW_INDEX
+                : GridLayoutEngine.CELL_COLUMN_INDEX;
+        final int spec = row ? GridLayoutEngine.CELL_ROW_SPEC
+                : GridLayoutEngine.CELL_COLUMN_SPEC;
+        return GridLayoutEngine.endTrack(cells[c + index], cells[c + spec])
+                - GridLayoutEngine.firstTrack(cells[c + index]);
+    }
+
+    private static float[] copyOf(float[] values, int length) {
+        final float[] copy = new float[length];
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static int[] copyOf(int[] values, int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+}
@@ -0,0 +1,292 @@
+package com.dolphin.gridlayout;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Counters and timings of the measure and layout passes of one
+ * {@link DolphinGridLayout}, set through
+ * {@link DolphinGridLayout#setMetrics(GridMetrics)}. A grid without metrics
+ * only pays a null check per pass and per child.
+ * <p>
+ * Counters add up until {@link #reset()}. The listener hears about every
+ * pass, e.g. to report grids measuring many times per frame. With tracing
+ * on, passes also show up as sections in systrace and perfetto from API 18.
+ *
+ * @author dolphinWang
+ */
+public class GridMetrics {
+
+    private static final String SECTION_MEASURE = "DolphinGridLayout#onMeasure";
+    private static final String SECTION_LAYOUT = "DolphinGridLayout#onLayout";
+
+    /**
+     * Told after every pass of the grid the metrics are set on.
+     */
+    public interface Listener {
+        void onMeasureFinished(DolphinGridLayout grid, GridMetrics metrics);
+
+        void onLayoutFinished(DolphinGridLayout grid, GridMetrics metrics);
+    }
+
+    private Listener mListener;
+    private boolean mTraceEnabled;
+
+    long mMeasurePasses;
+    long mLayoutPasses;
+
+    /**
+     * Calls to child.measure, split by why the grid made them.
+     */
+    long mChildMeasures;
+    long mChildRemeasures;
+    long mIntrinsicMeasures;
+
+    /**
+     * Child measures saved by the caches.
+     */
+    long mMeasureCacheHits;
+    long mIntrinsicCacheHits;
+    long mIntrinsicReuses;
+
+    long mChildLayouts;
+    long mChildLayoutsSkipped;
+
+    /**
+     * Layout requests swallowed by a batch of changes.
+     */
+    long mLayoutRequestsCoalesced;
+
+    long mMeasureNanos;
+    long mMaxMeasureNanos;
+    long mLastMeasureNanos;
+    long mLayoutNanos;
+    long mMaxLayoutNanos;
+    long mLastLayoutNanos;
+
+    /**
+     * Child measures of the pass running or last run.
+     */
+    int mPassChildMeasures;
+
+    private long mPassStart;
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Emit a trace section for every pass. Ignored before API 18.
+     */
+    public void setTraceEnabled(boolean enabled) {
+        mTraceEnabled = enabled;
+    }
+
+    public boolean isTraceEnabled() {
+        return mTraceEnabled;
+    }
+
+    public void reset() {
+        mMeasurePasses = 0;
+        mLayoutPasses = 0;
+        mChildMeasures = 0;
+        mChildRemeasures = 0;
+        mIntrinsicMeasures = 0;
+        mMeasureCacheHits = 0;
+        mIntrinsicCacheHits = 0;
+        mIntrinsicReuses = 0;
+        mChildLayouts = 0;
+        mChildLayoutsSkipped = 0;
+        mLayoutRequestsCoalesced = 0;
+        mMeasureNanos = 0;
+        mMaxMeasureNanos = 0;
+        mLastMeasureNanos = 0;
+        mLayoutNanos = 0;
+        mMaxLayoutNanos = 0;
+        mLastLayoutNanos = 0;
+        mPassChildMeasures = 0;
+    }
+
+    void beginMeasure() {
+        beginSection(SECTION_MEASURE);
+        mPassChildMeasures = 0;
+        mPassStart = System.nanoTime();
+    }
+
+    void endMeasure(DolphinGridLayout grid) {
+        final long nanos = System.nanoTime() - mPassStart;
+        endSection();
+
+        mMeasurePasses++;
+        mLastMeasureNanos = nanos;
+        mMeasureNanos += nanos;
+        if (nanos > mMaxMeasureNanos) {
+            mMaxMeasureNanos = nanos;
+        }
+
+        if (mListener != null) {
+            mListener.onMeasureFinished(grid, this);
+        }
+    }
+
+    void beginLayout() {
+        beginSection(SECTION_LAYOUT);
+        mPassStart = System.nanoTime();
+    }
+
+    void endLayout(DolphinGridLayout grid) {
+        final long nanos = System.nanoTime() - mPassStart;
+        endSection();
+
+        mLayoutPasses++;
+        mLastLayoutNanos = nanos;
+        mLayoutNanos += nanos;
+        if (nanos > mMaxLayoutNanos) {
+            mMaxLayoutNanos = nanos;
+        }
+
+        if (mListener != null) {
+            mListener.onLayoutFinished(grid, this);
+        }
+    }
+
+    /**
+     * Count a call to child.measure.
+     *
+     * @param remeasure whether it is a second one for the same child and pass
+     */
+    void countChildMeasure(boolean remeasure) {
+        if (remeasure) {
+            mChildRemeasures++;
+        } else {
+            mChildMeasures++;
+        }
+        mPassChildMeasures++;
+    }
+
+    void countIntrinsicMeasure() {
+        mIntrinsicMeasures++;
+        mPassChildMeasures++;
+    }
+
+    private void beginSection(String name) {
+        if (mTraceEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    private void endSection() {
+        if (mTraceEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    public long getMeasurePasses() {
+        return mMeasurePasses;
+    }
+
+    public long getLayoutPasses() {
+        return mLayoutPasses;
+    }
+
+    /**
+     * @return first calls to child.measure in the main loop
+     */
+    public long getChildMeasures() {
+        return mChildMeasures;
+    }
+
+    /**
+     * @return second calls to child.measure, for children that did not fit
+     *         their cells
+     */
+    public long getChildRemeasures() {
+        return mChildRemeasures;
+    }
+
+    /**
+     * @return calls to child.measure to size tracks to content
+     */
+    public long getIntrinsicMeasures() {
+        return mIntrinsicMeasures;
+    }
+
+    public long getMeasureCacheHits() {
+        return mMeasureCacheHits;
+    }
+
+    public long getIntrinsicCacheHits() {
+        return mIntrinsicCacheHits;
+    }
+
+    /**
+     * @return main loop measures answered by the intrinsic pass of the same
+     *         grid pass
+     */
+    public long getIntrinsicReuses() {
+        return mIntrinsicReuses;
+    }
+
+    public long getChildLayouts() {
+        return mChildLayouts;
+    }
+
+    /**
+     * @return children left where they were by a layout pass
+     */
+    public long getChildLayoutsSkipped() {
+        return mChildLayoutsSkipped;
+    }
+
+    /**
+     * @return layout requests made between beginUpdate() and endUpdate(),
+     *         which the batch turned into one
+     */
+    public long getLayoutRequestsCoalesced() {
+        return mLayoutRequestsCoalesced;
+    }
+
+    /**
+     * @return calls to child.measure of the last measure pass, all kinds
+     */
+    public int getLastPassChildMeasures() {
+        return mPassChildMeasures;
+    }
+
+    public long getMeasureNanos() {
+        return mMeasureNanos;
+    }
+
+    public long getMaxMeasureNanos() {
+        return mMaxMeasureNanos;
+    }
+
+    public long getLastMeasureNanos() {
+        return mLastMeasureNanos;
+    }
+
+    public long getLayoutNanos() {
+        return mLayoutNanos;
+    }
+
+    public long getMaxLayoutNanos() {
+        return mMaxLayoutNanos;
+    }
+
+    public long getLastLayoutNanos() {
+        return mLastLayoutNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "GridMetrics{measures " + mMeasurePasses + " ("
+                + mMeasureNanos / 1000 + "us), layouts " + mLayoutPasses
+                + " (" + mLayoutNanos / 1000 + "us), child measures "
+                + mChildMeasures + " + " + mChildRemeasures + " again + "
+                + mIntrinsicMeasures + " intrinsic, cache hits "
+                + mMeasureCacheHits + " + " + mIntrinsicCacheHits
+                + " intrinsic + " + mIntrinsicReuses + " reused}";
+    }
+}
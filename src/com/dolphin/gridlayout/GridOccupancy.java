@@ -0,0 +1,382 @@
+package com.dolphin.gridlayout;
+
+/**
+ * Which cells of a grid are taken, one bit per cell in row-major order. Used
+ * to auto-place children that leave their rowIndex or columnIndex out, and
+ * to find children sitting on top of each other. Pure Java like
+ * {@link GridLayoutEngine}, so tile layouts can be placed off-device too.
+ * <p>
+ * Call {@link #reset(int, int)}, then {@link #occupy} the children with a
+ * fixed cell and {@link #place} the others in order. Placing stays close to
+ * linear in the number of children: the sparse flows keep a cursor that only
+ * moves forward, the dense flows start from the first free cell, and full
+ * cells are skipped a word at a time.
+ *
+ * @author dolphinWang
+ */
+public class GridOccupancy {
+
+    /**
+     * Fill row after row.
+     */
+    public static final int FLOW_ROW = 0x01;
+
+    /**
+     * Fill column after column.
+     */
+    public static final int FLOW_COLUMN = 0x02;
+
+    /**
+     * Combined with a flow: go back for holes left by bigger cells instead of
+     * only moving forward. Children may end up out of order.
+     */
+    public static final int FLOW_DENSE = 0x04;
+
+    private static final int ADDRESS_BITS = 6;
+    private static final int WORD_MASK = 63;
+
+    private long[] mBits = new long[0];
+    private int mRowCount;
+    private int mColumnCount;
+
+    /**
+     * Where the sparse flow goes on, in its own major, minor order.
+     */
+    private int mCursorMajor;
+    private int mCursorMinor;
+
+    /**
+     * No cell before these is free, in row-major and column-major order.
+     */
+    private int mFirstFreeByRow;
+    private int mFirstFreeByColumn;
+
+    private int mOverlapCount;
+
+    /**
+     * Free every cell of a grid of the given size.
+     */
+    public void reset(int rowCount, int columnCount) {
+        mRowCount = Math.max(0, rowCount);
+        mColumnCount = Math.max(0, columnCount);
+
+        final int words = (mRowCount * mColumnCount + WORD_MASK) >>> ADDRESS_BITS;
+        if (mBits.length < words) {
+            mBits = new long[words];
+        } else {
+            for (int i = 0; i < words; i++) {
+                mBits[i] = 0;
+            }
+        }
+
+        mCursorMajor = 0;
+        mCursorMinor = 0;
+        mFirstFreeByRow = 0;
+        mFirstFreeByColumn = 0;
+        mOverlapCount = 0;
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    /**
+     * @return how many {@link #occupy} calls hit a taken cell since the last
+     *         reset
+     */
+    public int getOverlapCount() {
+        return mOverlapCount;
+    }
+
+    public boolean isOccupied(int row, int column) {
+        if (row < 0 || row >= mRowCount || column < 0 || column >= mColumnCount) {
+            return false;
+        }
+
+        final int bit = row * mColumnCount + column;
+        return (mBits[bit >>> ADDRESS_BITS] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return true if the area lies inside the grid and none of its cells
+     *         are taken
+     */
+    public boolean isFree(int row, int column, int rowSpan, int columnSpan) {
+        if (row < 0 || column < 0 || row + rowSpan > mRowCount
+                || column + columnSpan > mColumnCount) {
+            return false;
+        }
+
+        for (int r = row; r < row + rowSpan; r++) {
+            final int from = r * mColumnCount + column;
+            if (anySet(from, from + columnSpan)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Take the cells of an area, the part outside the grid is ignored.
+     *
+     * @return true if some of them were taken already
+     */
+    public boolean occupy(int row, int column, int rowSpan, int columnSpan) {
+        final int firstRow = Math.max(0, row);
+        final int endRow = Math.min(mRowCount, row + rowSpan);
+        final int firstColumn = Math.max(0, column);
+        final int endColumn = Math.min(mColumnCount, column + columnSpan);
+
+        boolean overlap = false;
+        for (int r = firstRow; r < endRow; r++) {
+            final int from = r * mColumnCount;
+            overlap |= setRange(from + firstColumn, from + endColumn);
+        }
+
+        if (overlap) {
+            mOverlapCount++;
+        }
+        return overlap;
+    }
+
+    /**
+     * Find the next free area for a child and take it. A child may fix its
+     * row or its column, then only the other one is searched.
+     *
+     * @param row fixed row, or a negative value to search it
+     * @param column fixed column, or a negative value to search it
+     * @param flow {@link #FLOW_ROW} or {@link #FLOW_COLUMN}, optionally with
+     *            {@link #FLOW_DENSE}
+     * @param out receives row and column of the area
+     * @return false if no free area is left, nothing is taken then
+     */
+    public boolean place(int row, int column, int rowSpan, int columnSpan,
+            int flow, int[] out) {
+        rowSpan = Math.max(1, rowSpan);
+        columnSpan = Math.max(1, columnSpan);
+
+        final boolean byColumn = (flow & FLOW_COLUMN) != 0;
+        final boolean dense = (flow & FLOW_DENSE) != 0;
+
+        // Work in (major, minor), rows come first unless flowing by column
+        final int majorCount = byColumn ? mColumnCount : mRowCount;
+        final int minorCount = byColumn ? mRowCount : mColumnCount;
+        final int majorSpan = byColumn ? columnSpan : rowSpan;
+        final int minorSpan = byColumn ? rowSpan : columnSpan;
+        final int fixedMajor = byColumn ? column : row;
+        final int fixedMinor = byColumn ? row : column;
+
+        if (majorSpan > majorCount || minorSpan > minorCount) {
+            return false;
+        }
+
+        int major;
+        int minor;
+        if (fixedMajor >= 0 && fixedMinor >= 0) {
+            major = fixedMajor;
+            minor = fixedMinor;
+            if (!isFreeIn(major, minor, majorSpan, minorSpan, byColumn)) {
+                return false;
+            }
+        } else if (fixedMajor >= 0) {
+            // Locked to a track of the flow, look along it
+            major = fixedMajor;
+            minor = 0;
+            while (minor + minorSpan <= minorCount
+                    && !isFreeIn(major, minor, majorSpan, minorSpan, byColumn)) {
+                minor = nextCandidateMinor(major, minor, byColumn);
+            }
+            if (minor + minorSpan > minorCount) {
+                return false;
+            }
+        } else if (fixedMinor >= 0) {
+            // Locked across the flow, look for the first track it fits in
+            minor = fixedMinor;
+            if (dense) {
+                major = 0;
+            } else {
+                major = fixedMinor < mCursorMinor ? mCursorMajor + 1
+                        : mCursorMajor;
+            }
+            while (major + majorSpan <= majorCount
+                    && !isFreeIn(major, minor, majorSpan, minorSpan, byColumn)) {
+                major++;
+            }
+            if (major + majorSpan > majorCount) {
+                return false;
+            }
+        } else {
+            if (dense) {
+                final int first = firstFree(byColumn);
+                major = first / minorCount;
+                minor = first % minorCount;
+            } else {
+                major = mCursorMajor;
+                minor = mCursorMinor;
+            }
+
+            while (true) {
+                if (minor + minorSpan > minorCount) {
+                    major++;
+                    minor = 0;
+                }
+                if (major + majorSpan > majorCount) {
+                    return false;
+                }
+                if (isFreeIn(major, minor, majorSpan, minorSpan, byColumn)) {
+                    break;
+                }
+                minor = nextCandidateMinor(major, minor, byColumn);
+            }
+        }
+
+        if (!dense && fixedMajor < 0) {
+            mCursorMajor = major;
+            mCursorMinor = minor + minorSpan;
+        }
+
+        final int placedRow = byColumn ? minor : major;
+        final int placedColumn = byColumn ? major : minor;
+        occupy(placedRow, placedColumn, rowSpan, columnSpan);
+
+        out[0] = placedRow;
+        out[1] = placedColumn;
+        return true;
+    }
+
+    private boolean isFreeIn(int major, int minor, int majorSpan,
+            int minorSpan, boolean byColumn) {
+        return byColumn ? isFree(minor, major, minorSpan, majorSpan)
+                : isFree(major, minor, majorSpan, minorSpan);
+    }
+
+    /**
+     * Next minor position worth trying after minor failed. Along a row the
+     * taken cells are skipped word by word.
+     */
+    private int nextCandidateMinor(int major, int minor, boolean byColumn) {
+        if (byColumn) {
+            return minor + 1;
+        }
+
+        final int from = major * mColumnCount;
+        final int at = from + minor;
+        final int end = from + mColumnCount;
+        if (isSet(at)) {
+            // Skip the run of taken cells
+            final int clear = nextClear(at, end);
+            return clear - from;
+        }
+
+        return minor + 1;
+    }
+
+    /**
+     * @return index of the first free cell in the given order, or the cell
+     *         count if the grid is full
+     */
+    private int firstFree(boolean byColumn) {
+        final int cells = mRowCount * mColumnCount;
+        if (!byColumn) {
+            mFirstFreeByRow = nextClear(mFirstFreeByRow, cells);
+            return mFirstFreeByRow;
+        }
+
+        int index = mFirstFreeByColumn;
+        while (index < cells
+                && isSet((index % mRowCount) * mColumnCount + index / mRowCount)) {
+            index++;
+        }
+        mFirstFreeByColumn = index;
+        return index;
+    }
+
+    private boolean isSet(int bit) {
+        return (mBits[bit >>> ADDRESS_BITS] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the first clear bit in [from, end), or end if there is none
+     */
+    private int nextClear(int from, int end) {
+        if (from >= end) {
+            return end;
+        }
+
+        int word = from >>> ADDRESS_BITS;
+        long bits = ~mBits[word] & (-1L << from);
+        while (bits == 0) {
+            word++;
+            if (word << ADDRESS_BITS >= end) {
+                return end;
+            }
+            bits = ~mBits[word];
+        }
+
+        return Math.min(end, (word << ADDRESS_BITS)
+                + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * @return true if any bit in [from, to) is set
+     */
+    private boolean anySet(int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+
+        final int firstWord = from >>> ADDRESS_BITS;
+        final int lastWord = (to - 1) >>> ADDRESS_BITS;
+        final long firstMask = -1L << from;
+        final long lastMask = -1L >>> -to;
+
+        if (firstWord == lastWord) {
+            return (mBits[firstWord] & firstMask & lastMask) != 0;
+        }
+
+        if ((mBits[firstWord] & firstMask) != 0) {
+            return true;
+        }
+        for (int i = firstWord + 1; i < lastWord; i++) {
+            if (mBits[i] != 0) {
+                return true;
+            }
+        }
+        return (mBits[lastWord] & lastMask) != 0;
+    }
+
+    /**
+     * Set the bits in [from, to).
+     *
+     * @return true if any of them was set already
+     */
+    private boolean setRange(int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+
+        final boolean overlap = anySet(from, to);
+
+        final int firstWord = from >>> ADDRESS_BITS;
+        final int lastWord = (to - 1) >>> ADDRESS_BITS;
+        final long firstMask = -1L << from;
+        final long lastMask = -1L >>> -to;
+
+        if (firstWord == lastWord) {
+            mBits[firstWord] |= firstMask & lastMask;
+        } else {
+            mBits[firstWord] |= firstMask;
+            for (int i = firstWord + 1; i < lastWord; i++) {
+                mBits[i] = -1L;
+            }
+            mBits[lastWord] |= lastMask;
+        }
+
+        return overlap;
+    }
+}
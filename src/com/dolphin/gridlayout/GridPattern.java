@@ -0,0 +1,170 @@
+package com.dolphin.gridlayout;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A span pattern repeated by many grids, e.g. the rows of a feed: a grid
+ * setup plus one cell per tile, registered once by name. Tiles fill their
+ * cells, so the layout of the pattern only depends on the measure specs and
+ * padding of the grid; it is solved once per such key and the
+ * {@link GridSnapshot} shared by every grid showing the pattern through
+ * {@link DolphinGridLayout#setPattern(GridPattern)}. Binding a row is then a
+ * lookup, with no attributes parsed and nothing solved. Use it on the UI
+ * thread.
+ *
+ * @author dolphinWang
+ */
+public final class GridPattern implements CellSpecLookup {
+
+    /**
+     * Layouts kept per pattern, one per width the rows come in is plenty.
+     */
+    private static final int MAX_LAYOUTS = 4;
+    private static final int KEY_STRIDE = 6;
+
+    private static final HashMap<String, GridPattern> sPatterns =
+            new HashMap<String, GridPattern>();
+
+    private final String mName;
+    private final GridLayoutEngine mEngine;
+    private final int mCount;
+
+    /**
+     * Cells in whole tracks, {@link GridLayoutEngine#CELL_STRIDE} per tile,
+     * and the same as solver input.
+     */
+    private final int[] mCells;
+    private final float[] mCellParams;
+    private final int[] mParams;
+    private final int[] mDesired;
+    private final int[] mGravities;
+
+    /**
+     * Solved layouts and their width spec, height spec and padding, the
+     * oldest replaced first.
+     */
+    private final GridSnapshot[] mLayouts = new GridSnapshot[MAX_LAYOUTS];
+    private final int[] mLayoutKeys = new int[MAX_LAYOUTS * KEY_STRIDE];
+    private int mNextLayout;
+
+    /**
+     * @param setup counts, spaces and track definitions, copied
+     * @param cells rowIndex, rowSpec, columnIndex and columnSpec of each
+     *            tile in whole tracks, at the {@link GridLayoutEngine}
+     *            CELL_* offsets
+     */
+    public GridPattern(String name, GridLayoutEngine setup, int[] cells) {
+        if (cells.length % GridLayoutEngine.CELL_STRIDE != 0) {
+            throw new IllegalArgumentException("Cells of pattern " + name
+                    + " are not " + GridLayoutEngine.CELL_STRIDE
+                    + " ints per tile.");
+        }
+
+        mName = name;
+        mEngine = new GridLayoutEngine(setup);
+        mCount = cells.length / GridLayoutEngine.CELL_STRIDE;
+        mCells = cells.clone();
+
+        mCellParams = new float[mCount * 4];
+        for (int i = 0; i < mCount; i++) {
+            final int c = i * GridLayoutEngine.CELL_STRIDE;
+            mCellParams[i * 4] = cells[c + GridLayoutEngine.CELL_ROW_INDEX];
+            mCellParams[i * 4 + 1] = cells[c + GridLayoutEngine.CELL_ROW_SPEC];
+            mCellParams[i * 4 + 2] = cells[c
+                    + GridLayoutEngine.CELL_COLUMN_INDEX];
+            mCellParams[i * 4 + 3] = cells[c
+                    + GridLayoutEngine.CELL_COLUMN_SPEC];
+        }
+        mParams = new int[mCount * GridLayoutEngine.SIZE_STRIDE];
+        Arrays.fill(mParams, GridLayoutEngine.MATCH_PARENT);
+        mDesired = new int[mCount * GridLayoutEngine.SIZE_STRIDE];
+        mGravities = new int[mCount];
+    }
+
+    /**
+     * Make a pattern known by its name, replacing any of the same name.
+     */
+    public static void register(GridPattern pattern) {
+        sPatterns.put(pattern.mName, pattern);
+    }
+
+    /**
+     * @return the pattern registered under name, or null
+     */
+    public static GridPattern get(String name) {
+        return sPatterns.get(name);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Setup of the pattern. Do not change it.
+     */
+    public GridLayoutEngine getEngine() {
+        return mEngine;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public void getCellSpec(int position, int[] outCell) {
+        System.arraycopy(mCells, position * GridLayoutEngine.CELL_STRIDE,
+                outCell, 0, GridLayoutEngine.CELL_STRIDE);
+    }
+
+    /**
+     * @return the layout of the tiles for the given measure specs and
+     *         padding, solved on the first call for them, or null if the
+     *         tracks depend on the content of the tiles for those specs,
+     *         e.g. an UNSPECIFIED height in a list
+     */
+    public GridSnapshot getLayout(int widthMeasureSpec, int heightMeasureSpec,
+            int paddingLeft, int paddingTop, int paddingRight,
+            int paddingBottom) {
+        // Tiles have no size of their own here, so every such track would
+        // solve to 0
+        if (mEngine.getColumnCount() > 0
+                && mEngine.columnsNeedContent(GridLayoutEngine
+                        .getMode(widthMeasureSpec))
+                || mEngine.getRowCount() > 0
+                && mEngine.rowsNeedContent(GridLayoutEngine
+                        .getMode(heightMeasureSpec))) {
+            return null;
+        }
+
+        final int[] keys = mLayoutKeys;
+        for (int i = 0; i < MAX_LAYOUTS; i++) {
+            final int k = i * KEY_STRIDE;
+            if (mLayouts[i] != null && keys[k] == widthMeasureSpec
+                    && keys[k + 1] == heightMeasureSpec
+                    && keys[k + 2] == paddingLeft && keys[k + 3] == paddingTop
+                    && keys[k + 4] == paddingRight
+                    && keys[k + 5] == paddingBottom) {
+                return mLayouts[i];
+            }
+        }
+
+        mEngine.setPadding(paddingLeft, paddingTop, paddingRight,
+                paddingBottom);
+        final GridSnapshot layout = new GridLayoutSolver(mEngine, 0, mCount,
+                mCellParams, mParams, mDesired, mGravities).solve(
+                widthMeasureSpec, heightMeasureSpec);
+
+        final int slot = mNextLayout;
+        mNextLayout = (slot + 1) % MAX_LAYOUTS;
+        mLayouts[slot] = layout;
+        final int k = slot * KEY_STRIDE;
+        keys[k] = widthMeasureSpec;
+        keys[k + 1] = heightMeasureSpec;
+        keys[k + 2] = paddingLeft;
+        keys[k + 3] = paddingTop;
+        keys[k + 4] = paddingRight;
+        keys[k + 5] = paddingBottom;
+        return layout;
+    }
+}
@@ -0,0 +1,250 @@
+package com.dolphin.gridlayout;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Solved layout of a grid for one (width spec, height spec, config) key:
+ * the track sizes plus the cell and bounds of every child. Applied on the
+ * next start instead of measuring children for the tracks, then checked by
+ * a regular pass once the first frame is out.
+ * <p>
+ * Stored as a compact binary blob: a magic and version header, then
+ * zigzag varints, so a 100 child grid takes well under 2KB. Pure Java like
+ * {@link GridLayoutEngine}.
+ *
+ * @author dolphinWang
+ */
+public final class GridSnapshot {
+
+    private static final int MAGIC = 0x44474C53;
+    private static final int VERSION = 1;
+
+    private final int mWidthSpec;
+    private final int mHeightSpec;
+    private final int mConfigKey;
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mColumnSizes;
+    private final int[] mRowSizes;
+    private final int mChildCount;
+
+    /**
+     * Packed cell specs, {@link GridLayoutEngine#CELL_STRIDE} per child.
+     */
+    private final int[] mCells;
+
+    /**
+     * Packed bounds, {@link GridLayoutEngine#RECT_STRIDE} per child.
+     */
+    private final int[] mRects;
+
+    public GridSnapshot(int widthSpec, int heightSpec, int configKey,
+            int width, int height, int[] columnSizes, int[] rowSizes,
+            int childCount, int[] cells, int[] rects) {
+        mWidthSpec = widthSpec;
+        mHeightSpec = heightSpec;
+        mConfigKey = configKey;
+        mWidth = width;
+        mHeight = height;
+        mColumnSizes = columnSizes;
+        mRowSizes = rowSizes;
+        mChildCount = childCount;
+        mCells = cells;
+        mRects = rects;
+    }
+
+    /**
+     * @return true if this snapshot was taken for the given key
+     */
+    public boolean matches(int widthSpec, int heightSpec, int configKey) {
+        return mWidthSpec == widthSpec && mHeightSpec == heightSpec
+                && mConfigKey == configKey;
+    }
+
+    /**
+     * @return true if this snapshot was taken for the given measure specs,
+     *         whatever the config
+     */
+    public boolean matches(int widthSpec, int heightSpec) {
+        return mWidthSpec == widthSpec && mHeightSpec == heightSpec;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int[] getColumnSizes() {
+        return mColumnSizes;
+    }
+
+    public int[] getRowSizes() {
+        return mRowSizes;
+    }
+
+    public int getChildCount() {
+        return mChildCount;
+    }
+
+    /**
+     * @return true if the child at index sat in the given cell, false for
+     *         an index past the children of the snapshot
+     */
+    public boolean hasCell(int index, CellSpec spec) {
+        if (index < 0 || index >= mChildCount) {
+            return false;
+        }
+
+        final int c = index * GridLayoutEngine.CELL_STRIDE;
+        return mCells[c + GridLayoutEngine.CELL_ROW_INDEX] == spec.rowIndex
+                && mCells[c + GridLayoutEngine.CELL_ROW_SPEC] == spec.rowSpec
+                && mCells[c + GridLayoutEngine.CELL_COLUMN_INDEX] == spec.columnIndex
+                && mCells[c + GridLayoutEngine.CELL_COLUMN_SPEC] == spec.columnSpec;
+    }
+
+    /**
+     * Bounds of a child, left, top, right and bottom from
+     * index * {@link GridLayoutEngine#RECT_STRIDE}.
+     */
+    public int[] getRects() {
+        return mRects;
+    }
+
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64
+                + mChildCount * 16);
+        writeFixed(out, MAGIC);
+        writeFixed(out, VERSION);
+
+        writeVarint(out, mWidthSpec);
+        writeVarint(out, mHeightSpec);
+        writeVarint(out, mConfigKey);
+        writeVarint(out, mWidth);
+        writeVarint(out, mHeight);
+        writeArray(out, mColumnSizes, mColumnSizes.length);
+        writeArray(out, mRowSizes, mRowSizes.length);
+        writeVarint(out, mChildCount);
+        writeArray(out, mCells, mChildCount * GridLayoutEngine.CELL_STRIDE);
+        writeArray(out, mRects, mChildCount * GridLayoutEngine.RECT_STRIDE);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the snapshot in data, or null if it is broken or was written
+     *         by another version
+     */
+    public static GridSnapshot fromByteArray(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        final Reader in = new Reader(data);
+        if (in.readFixed() != MAGIC || in.readFixed() != VERSION) {
+            return null;
+        }
+
+        final int widthSpec = in.readVarint();
+        final int heightSpec = in.readVarint();
+        final int configKey = in.readVarint();
+        final int width = in.readVarint();
+        final int height = in.readVarint();
+        final int[] columnSizes = in.readArray();
+        final int[] rowSizes = in.readArray();
+        final int childCount = in.readVarint();
+        final int[] cells = in.readArray();
+        final int[] rects = in.readArray();
+
+        if (in.mBroken || childCount < 0 || cells == null || rects == null
+                || cells.length != childCount * GridLayoutEngine.CELL_STRIDE
+                || rects.length != childCount * GridLayoutEngine.RECT_STRIDE) {
+            return null;
+        }
+
+        return new GridSnapshot(widthSpec, heightSpec, configKey, width,
+                height, columnSizes, rowSizes, childCount, cells, rects);
+    }
+
+    private static void writeFixed(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        // Zigzag, so small negative values stay short too
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static void writeArray(ByteArrayOutputStream out, int[] values,
+            int count) {
+        writeVarint(out, count);
+        for (int i = 0; i < count; i++) {
+            writeVarint(out, values[i]);
+        }
+    }
+
+    /**
+     * Reads the blob back, flagging it broken instead of throwing when it
+     * ends early.
+     */
+    private static class Reader {
+        private final byte[] mData;
+        private int mPosition;
+        private boolean mBroken;
+
+        Reader(byte[] data) {
+            mData = data;
+        }
+
+        private int readByte() {
+            if (mPosition >= mData.length) {
+                mBroken = true;
+                return 0;
+            }
+            return mData[mPosition++] & 0xFF;
+        }
+
+        int readFixed() {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8
+                    | readByte();
+        }
+
+        int readVarint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+
+            mBroken = true;
+            return 0;
+        }
+
+        int[] readArray() {
+            final int count = readVarint();
+            if (mBroken || count < 0 || count > mData.length - mPosition) {
+                mBroken = true;
+                return null;
+            }
+
+            final int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readVarint();
+            }
+            return values;
+        }
+    }
+}
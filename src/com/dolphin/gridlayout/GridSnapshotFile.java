@@ -0,0 +1,203 @@
+package com.dolphin.gridlayout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link GridSnapshot} kept in a file between launches. The file is read
+ * and written on an executor, results are handed back on another one, the
+ * UI thread for a grid; call everything else there too.
+ * <p>
+ * A snapshot read before the grid solved a layout of its own is kept for
+ * its first measure, see {@link #takeLoadedSnapshot()}. The first solved
+ * layout is written back once, and only if it changed. Pure Java like
+ * {@link GridSnapshot}.
+ *
+ * @author dolphinWang
+ */
+final class GridSnapshotFile {
+
+    /**
+     * Told on the thread results are handed back on, unless noted.
+     */
+    interface Listener {
+        void onSnapshotFileLoaded(GridSnapshotFile file);
+
+        /**
+         * Called on the executor, the file keeps what it had.
+         */
+        void onSnapshotFileWriteFailed(GridSnapshotFile file, IOException e);
+    }
+
+    private final File mFile;
+    private final File mNewFile;
+    private final Executor mExecutor;
+    private final Executor mCallbackExecutor;
+    private final Listener mListener;
+
+    private boolean mLoaded;
+    private boolean mSolved;
+    private boolean mWriteClaimed;
+
+    /**
+     * Content of the file as last read or written, null if there is none.
+     */
+    private byte[] mData;
+
+    /**
+     * Snapshot read for the first measure, null once taken or stale.
+     */
+    private GridSnapshot mLoadedSnapshot;
+
+    GridSnapshotFile(File file, Executor executor, Executor callbackExecutor,
+            Listener listener) {
+        mFile = file;
+        mNewFile = new File(file.getPath() + ".new");
+        mExecutor = executor;
+        mCallbackExecutor = callbackExecutor;
+        mListener = listener;
+    }
+
+    /**
+     * Read the file on the executor.
+     */
+    void load() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] data = readFully(mFile);
+                final GridSnapshot snapshot = GridSnapshot.fromByteArray(data);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(data, snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(byte[] data, GridSnapshot snapshot) {
+        mLoaded = true;
+        mData = data;
+        // Once the grid solved, its own layout is newer
+        mLoadedSnapshot = mSolved ? null : snapshot;
+        mListener.onSnapshotFileLoaded(this);
+    }
+
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    boolean hasLoadedSnapshot() {
+        return mLoadedSnapshot != null;
+    }
+
+    /**
+     * @return the snapshot read, once, or null if there is none or the grid
+     *         solved first
+     */
+    GridSnapshot takeLoadedSnapshot() {
+        final GridSnapshot snapshot = mLoadedSnapshot;
+        mLoadedSnapshot = null;
+        return snapshot;
+    }
+
+    /**
+     * The grid solved a layout of its own: a snapshot not taken yet is
+     * dropped, and the layout can be written once the file was read.
+     */
+    void onSolved() {
+        mSolved = true;
+        mLoadedSnapshot = null;
+    }
+
+    /**
+     * @return true the one time the solved layout is to be written: after
+     *         the file was read, so it is only written if it changed, and
+     *         the grid solved
+     */
+    boolean claimWrite() {
+        if (!mLoaded || !mSolved || mWriteClaimed) {
+            return false;
+        }
+        mWriteClaimed = true;
+        return true;
+    }
+
+    /**
+     * Write a layout on the executor, unless the file holds it already.
+     */
+    void write(GridSnapshot snapshot) {
+        final byte[] data = snapshot.toByteArray();
+        if (Arrays.equals(data, mData)) {
+            // Same layout as last launch
+            return;
+        }
+
+        mData = data;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFully(data);
+                } catch (IOException e) {
+                    mListener.onSnapshotFileWriteFailed(GridSnapshotFile.this,
+                            e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Written aside and renamed over the file, so a crash leaves either the
+     * old content or the new one.
+     */
+    private void writeFully(byte[] data) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mNewFile);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!mNewFile.renameTo(mFile)) {
+            mNewFile.delete();
+            throw new IOException("Can not rename " + mNewFile + " to "
+                    + mFile);
+        }
+    }
+
+    /**
+     * @return the content of file, or null if there is none or it can not
+     *         be read
+     */
+    private static byte[] readFully(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            // None yet, or unreadable: solve as usual
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}